@@ -1,2 +1,12 @@
 @echo OFF
-java --enable-preview -jar target/imp-0.1.jar %*
\ No newline at end of file
+set IMP_JAR=target/imp-0.1.jar
+
+rem Send the build to a running `imp daemon` if this project has one
+if not exist .compile\imp.sock goto cold
+java --enable-preview -XX:TieredStopAtLevel=1 -cp %IMP_JAR% org.imp.jvm.tool.cli.BuildClient %*
+rem 75: no server answered, or it does not handle these arguments
+if errorlevel 75 if not errorlevel 76 goto cold
+exit /b %errorlevel%
+
+:cold
+java --enable-preview -jar %IMP_JAR% %*
\ No newline at end of file
@@ -4,45 +4,77 @@ import org.apache.commons.io.FilenameUtils;
 import org.imp.jvm.domain.SourceFile;
 import org.imp.jvm.tool.Compiler;
 import org.imp.jvm.types.StructType;
+import org.imp.jvm.types.UnionType;
 import org.imp.jvm.visitors.CodegenVisitor;
 import org.javatuples.Pair;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public class BytecodeGenerator {
 
-    public static void addToString(ClassWriter cw, StructType st, String constructorDescriptor, String ownerInternalName) {
-        var _mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
-        var ga = new GeneratorAdapter(_mv, Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;");
+    /**
+     * Start a method on `cv`. When PeepholeOptimizer or FrameComputer is enabled its
+     * instructions are collected in a MethodNode and passed on to `cv` when the method ends.
+     *
+     * @param owner internal name of the class `cv` writes
+     */
+    public static MethodVisitor visitMethod(ClassVisitor cv, String owner, int access, String name, String descriptor) {
+        if (!PeepholeOptimizer.ENABLED && !FrameComputer.ENABLED) return cv.visitMethod(access, name, descriptor, null, null);
+
+        return new MethodNode(Opcodes.ASM9, access, name, descriptor, null, null) {
+            @Override
+            public void visitEnd() {
+                super.visitEnd();
+                if (PeepholeOptimizer.ENABLED) PeepholeOptimizer.optimize(this);
+                if (FrameComputer.ENABLED) FrameComputer.compute(owner, this);
+                accept(cv);
+            }
+        };
+    }
 
-        if (st.parameters.size() > 0) {
+    /**
+     * @return ClassWriter flags for generated classes, ASM only computes what FrameComputer does not
+     */
+    public static int flags() {
+        return FrameComputer.ENABLED ? 0 : ClassWriter.COMPUTE_FRAMES + ClassWriter.COMPUTE_MAXS;
+    }
 
-            String owner = "java/lang/invoke/StringConcatFactory";
-            String name = "makeConcatWithConstants";
-            String descriptor = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;";
+    public static void addToString(ClassWriter cw, StructType st, String ownerInternalName) {
+        var _mv = visitMethod(cw, ownerInternalName, Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;");
+        var ga = new GeneratorAdapter(_mv, Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;");
 
-            var handle = new Handle(Opcodes.H_INVOKESTATIC, owner, name, descriptor, false);
+        if (st.parameters.size() > 0) {
 
+            var concatDescriptor = new StringBuilder();
             for (var pair : st.parameters) {
                 var pName = pair.getValue0();
                 var pType = pair.getValue1();
                 ga.loadThis();
                 ga.getField(Type.getType("L" + ownerInternalName + ";"), pName, Type.getType(pType.getDescriptor()));
+                // Print the member of a packed union, not the long it is stored in
+                if (pType instanceof UnionType ut && ut.isPacked()) {
+                    UnionType.box(ga);
+                    concatDescriptor.append(Constants.ObjectType.getDescriptor());
+                } else {
+                    concatDescriptor.append(pType.getDescriptor());
+                }
             }
 
             String recipe = st.name + "[" + st.parameters.stream().map(p -> p.getValue0() + "=\u0001").collect(Collectors.joining(", ")) + "]";
 
             ga.invokeDynamic(
-                    name,
-                    "(" + constructorDescriptor + ")Ljava/lang/String;",
-                    handle,
+                    Constants.MakeConcatWithConstants.getName(),
+                    "(" + concatDescriptor + ")Ljava/lang/String;",
+                    Constants.MakeConcatWithConstants,
                     recipe
             );
 
@@ -55,13 +87,13 @@ public class BytecodeGenerator {
     }
 
     public Pair<ClassWriter, Map<StructType, ClassWriter>> generate(Compiler compiler, SourceFile source) {
-        var cw = new ClassWriter(CodegenVisitor.flags);
+        var cw = new ClassWriter(flags());
 
         String qualifiedName = FilenameUtils.removeExtension(source.getFullRelativePath());
         cw.visit(CodegenVisitor.CLASS_VERSION, Opcodes.ACC_PUBLIC + Opcodes.ACC_SUPER, qualifiedName, null, "java/lang/Object", null);
 
         // Add constructor
-        var initMv = cw.visitMethod(Opcodes.ACC_PUBLIC, Constants.Init, "()V", null, null);
+        var initMv = visitMethod(cw, qualifiedName, Opcodes.ACC_PUBLIC, Constants.Init, "()V");
         var ga = new GeneratorAdapter(initMv, Opcodes.ACC_PUBLIC, Constants.Init, "()V");
         ga.visitVarInsn(Opcodes.ALOAD, 0);
         ga.visitMethodInsn(
@@ -77,7 +109,7 @@ public class BytecodeGenerator {
         // Add instance field
         cw.visitField(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, "instance", "L" + qualifiedName + ";", null, null);
 
-        var mvStatic = cw.visitMethod(Opcodes.ACC_STATIC, Constants.Clinit, "()V", null, null);
+        var mvStatic = visitMethod(cw, qualifiedName, Opcodes.ACC_STATIC, Constants.Clinit, "()V");
         ga = new GeneratorAdapter(mvStatic, Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, Constants.Clinit, "()V");
         var t = Type.getType("L" + qualifiedName + ";");
         ga.newInstance(t);
@@ -0,0 +1,94 @@
+package org.imp.jvm;
+
+import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.visitors.TypeCheckVisitor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codegen throughput on a generated source with many branching functions, with
+ * stack map frames written by FrameComputer against ClassWriter.COMPUTE_FRAMES.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CodegenBenchmark {
+
+	@Param({"100", "1000"})
+	public int functions;
+
+	@Param({"compiler", "asm"})
+	public String frames;
+
+	private Compiler compiler;
+	private SourceFile source;
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(CodegenBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	static String generate(int functions) {
+		var imp = new StringBuilder();
+		imp.append("""
+				struct Point {
+				    x int
+				    y float
+				}
+				""");
+		for (int i = 0; i < functions; i++) {
+			imp.append("""
+					func f%1$d(n int) {
+					    mut total = 0
+					    val p = Point(n, 2.5)
+					    for j in range(0, n) {
+					        if j > 1 and total < 1000 {
+					            total = total + j * %1$d
+					        } else {
+					            total = total - p.x
+					        }
+					    }
+					    while total > 100 {
+					        total = total / 2
+					    }
+					    log("f%1$d " + total + " " + p.y)
+					    return total
+					}
+					log(f%1$d(%1$d))
+					""".formatted(i));
+		}
+		return imp.toString();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		FrameComputer.ENABLED = frames.equals("compiler");
+
+		var root = Files.createTempDirectory("imp-codegen");
+		Files.writeString(root.resolve("large.imp"), generate(functions));
+
+		compiler = new Compiler();
+		source = compiler.parse(root.toString(), "", "large");
+		source.acceptVisitor(new TypeCheckVisitor(compiler, source.rootEnvironment, source));
+		if (!compiler.errorData().isEmpty()) throw new IllegalStateException(compiler.errorData().toString());
+	}
+
+	@Benchmark
+	public int codegen() {
+		var classes = new BytecodeGenerator().generate(compiler, source);
+		int size = classes.getValue0().toByteArray().length;
+		for (var inner : classes.getValue1().values()) size += inner.toByteArray().length;
+		return size;
+	}
+}
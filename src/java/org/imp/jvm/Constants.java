@@ -1,6 +1,7 @@
 package org.imp.jvm;
 
 import org.imp.runtime.ListWrapper;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
@@ -23,4 +24,22 @@ public class Constants {
 
     public static final int PublicStatic = Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC;
 
+    // Bootstrap method behind javac's string concatenation
+    public static final Handle MakeConcatWithConstants = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "java/lang/invoke/StringConcatFactory",
+            "makeConcatWithConstants",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    // Bootstrap method behind `match`
+    public static final Handle TypeSwitch = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "org/imp/runtime/TypeSwitch",
+            "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
 }
@@ -0,0 +1,531 @@
+package org.imp.jvm;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Writes the stack map frames and maximums of a generated method, so its
+ * ClassWriter can run without COMPUTE_FRAMES and COMPUTE_MAXS.
+ * <p>
+ * Unlike ClassWriter.COMPUTE_FRAMES this never loads classes. Imp has no
+ * subclassing, so where two different reference types meet the frame uses
+ * `java/lang/Object`. Union values are `Object` already and are cast before use.
+ * Instructions that are never reached are removed.
+ */
+public class FrameComputer implements Opcodes {
+    /**
+     * Change FrameComputer.ENABLED to `false` to let ASM compute frames
+     */
+    public static boolean ENABLED = true;
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private final String owner;
+    private final MethodNode method;
+    private final InsnList insns;
+    private final int maxLocals;
+    // Indexed by InsnList.indexOf
+    private AbstractInsnNode[] nodes;
+    private boolean[] targets;
+    private boolean[] reached;
+    private State[] states;
+    private final Deque<AbstractInsnNode> worklist = new ArrayDeque<>();
+    private int maxStack;
+
+    /**
+     * Locals and operand stack before an instruction, one entry per word. The
+     * second word of a long or double is TOP. Uninitialized values are the `new`
+     * instruction that created them.
+     */
+    private record State(Object[] locals, ArrayList<Object> stack) {
+        State copy() {
+            return new State(locals.clone(), new ArrayList<>(stack));
+        }
+    }
+
+    private FrameComputer(String owner, MethodNode method) {
+        this.owner = owner;
+        this.method = method;
+        this.insns = method.instructions;
+
+        int max = Type.getArgumentsAndReturnSizes(method.desc) >> 2;
+        if ((method.access & ACC_STATIC) != 0) max--;
+        for (var insn = insns.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof VarInsnNode v) {
+                int wide = switch (v.getOpcode()) {
+                    case LLOAD, DLOAD, LSTORE, DSTORE -> 2;
+                    default -> 1;
+                };
+                max = Math.max(max, v.var + wide);
+            } else if (insn instanceof IincInsnNode iinc) {
+                max = Math.max(max, iinc.var + 1);
+            }
+        }
+        this.maxLocals = max;
+    }
+
+    /**
+     * @param owner internal name of the class `method` belongs to
+     */
+    public static void compute(String owner, MethodNode method) {
+        new FrameComputer(owner, method).compute();
+    }
+
+    private void compute() {
+        for (var insn = insns.getFirst(); insn != null; ) {
+            var next = insn.getNext();
+            if (insn instanceof FrameNode) insns.remove(insn);
+            insn = next;
+        }
+        nodes = insns.toArray();
+        targets = new boolean[nodes.length];
+        reached = new boolean[nodes.length];
+        states = new State[nodes.length];
+
+        for (var insn : nodes) {
+            if (insn instanceof JumpInsnNode jump) {
+                target(jump.label);
+            } else if (insn instanceof TableSwitchInsnNode table) {
+                target(table.dflt);
+                table.labels.forEach(this::target);
+            } else if (insn instanceof LookupSwitchInsnNode lookup) {
+                target(lookup.dflt);
+                lookup.labels.forEach(this::target);
+            }
+        }
+        for (var tcb : method.tryCatchBlocks) target(tcb.handler);
+
+        var first = real(insns.getFirst());
+        if (first == null) return;
+        merge(first, initialState());
+        while (!worklist.isEmpty()) walk(worklist.pop());
+
+        // Only reachable targets get a frame, everything else that was never reached is dead code
+        for (int i = 0; i < nodes.length; i++) {
+            var insn = nodes[i];
+            if (insn.getOpcode() >= 0 && !reached[i]) {
+                insns.remove(insn);
+            } else if (targets[i]) {
+                insns.insertBefore(insn, frame(states[i]));
+            }
+        }
+        method.maxLocals = maxLocals;
+        method.maxStack = maxStack;
+    }
+
+    private void target(LabelNode label) {
+        var insn = real(label);
+        if (insn != null) targets[insns.indexOf(insn)] = true;
+    }
+
+    private State initialState() {
+        var locals = new Object[maxLocals];
+        Arrays.fill(locals, TOP);
+        int slot = 0;
+        if ((method.access & ACC_STATIC) == 0) {
+            locals[slot++] = method.name.equals("<init>") ? UNINITIALIZED_THIS : owner;
+        }
+        for (var type : Type.getArgumentTypes(method.desc)) {
+            locals[slot++] = value(type);
+            if (type.getSize() == 2) slot++;
+        }
+        return new State(locals, new ArrayList<>());
+    }
+
+    /**
+     * Follow one block from `start` until it ends or reaches another target.
+     */
+    private void walk(AbstractInsnNode start) {
+        var state = states[insns.indexOf(start)].copy();
+        var insn = start;
+        while (true) {
+            reached[insns.indexOf(insn)] = true;
+            maxStack = Math.max(maxStack, state.stack.size());
+            handlers(insn, state);
+            execute(insn, state);
+            handlers(insn, state);
+            maxStack = Math.max(maxStack, state.stack.size());
+
+            if (insn instanceof JumpInsnNode jump) {
+                merge(real(jump.label), state);
+                if (jump.getOpcode() == GOTO) return;
+            } else if (insn instanceof TableSwitchInsnNode table) {
+                merge(real(table.dflt), state);
+                for (var label : table.labels) merge(real(label), state);
+                return;
+            } else if (insn instanceof LookupSwitchInsnNode lookup) {
+                merge(real(lookup.dflt), state);
+                for (var label : lookup.labels) merge(real(label), state);
+                return;
+            }
+            switch (insn.getOpcode()) {
+                case IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN, ATHROW -> {
+                    return;
+                }
+            }
+
+            var next = real(insn.getNext());
+            if (next == null) throw new IllegalStateException("Execution falls off the end of " + method.name);
+            if (targets[insns.indexOf(next)]) {
+                merge(next, state);
+                return;
+            }
+            insn = next;
+        }
+    }
+
+    /**
+     * Exception handlers see the locals before and after every instruction they cover.
+     */
+    private void handlers(AbstractInsnNode insn, State state) {
+        if (method.tryCatchBlocks.isEmpty()) return;
+        int index = insns.indexOf(insn);
+        for (var tcb : method.tryCatchBlocks) {
+            if (index < insns.indexOf(tcb.start) || index >= insns.indexOf(tcb.end)) continue;
+            var stack = new ArrayList<>();
+            stack.add(tcb.type == null ? "java/lang/Throwable" : tcb.type);
+            merge(real(tcb.handler), new State(state.locals, stack));
+        }
+    }
+
+    private void merge(AbstractInsnNode target, State state) {
+        int index = insns.indexOf(target);
+        var existing = states[index];
+        if (existing == null) {
+            states[index] = state.copy();
+            worklist.push(target);
+            return;
+        }
+        if (existing.stack.size() != state.stack.size()) {
+            throw new IllegalStateException("Inconsistent stack height in " + method.name + " at instruction " + index);
+        }
+        boolean changed = false;
+        for (int i = 0; i < maxLocals; i++) {
+            var merged = merge(existing.locals[i], state.locals[i]);
+            if (merged != existing.locals[i]) {
+                existing.locals[i] = merged;
+                changed = true;
+            }
+        }
+        for (int i = 0; i < existing.stack.size(); i++) {
+            var merged = merge(existing.stack.get(i), state.stack.get(i));
+            if (merged != existing.stack.get(i)) {
+                existing.stack.set(i, merged);
+                changed = true;
+            }
+        }
+        if (changed) worklist.push(target);
+    }
+
+    private static Object merge(Object a, Object b) {
+        if (a == b || a.equals(b)) return a;
+        if (a == TOP || b == TOP) return TOP;
+        if (a == NULL && b instanceof String) return b;
+        if (b == NULL && a instanceof String) return a;
+        if (a instanceof String && b instanceof String) return OBJECT;
+        return TOP;
+    }
+
+    private FrameNode frame(State state) {
+        var locals = entries(Arrays.asList(state.locals));
+        while (!locals.isEmpty() && locals.get(locals.size() - 1) == TOP) locals.remove(locals.size() - 1);
+        var stack = entries(state.stack);
+        return new FrameNode(F_NEW, locals.size(), locals.toArray(), stack.size(), stack.toArray());
+    }
+
+    /**
+     * Words to frame entries, dropping the second word of longs and doubles.
+     */
+    private List<Object> entries(List<Object> words) {
+        var entries = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            var word = words.get(i);
+            if (word instanceof TypeInsnNode created) {
+                entries.add(label(created));
+            } else {
+                entries.add(word);
+            }
+            if (word == LONG || word == DOUBLE) i++;
+        }
+        return entries;
+    }
+
+    /**
+     * @return the label right before a `new`, added if there is none
+     */
+    private LabelNode label(TypeInsnNode created) {
+        if (created.getPrevious() instanceof LabelNode label) return label;
+        var label = new LabelNode();
+        insns.insertBefore(created, label);
+        return label;
+    }
+
+    private static AbstractInsnNode real(AbstractInsnNode insn) {
+        while (insn != null && insn.getOpcode() < 0) insn = insn.getNext();
+        return insn;
+    }
+
+    private static Object value(Type type) {
+        return switch (type.getSort()) {
+            case Type.BOOLEAN, Type.CHAR, Type.BYTE, Type.SHORT, Type.INT -> INTEGER;
+            case Type.FLOAT -> FLOAT;
+            case Type.LONG -> LONG;
+            case Type.DOUBLE -> DOUBLE;
+            default -> type.getInternalName();
+        };
+    }
+
+    private static Object constant(Object cst) {
+        if (cst instanceof Integer) return INTEGER;
+        if (cst instanceof Float) return FLOAT;
+        if (cst instanceof Long) return LONG;
+        if (cst instanceof Double) return DOUBLE;
+        if (cst instanceof String) return "java/lang/String";
+        if (cst instanceof Handle) return "java/lang/invoke/MethodHandle";
+        if (cst instanceof ConstantDynamic condy) return value(Type.getType(condy.getDescriptor()));
+        var type = (Type) cst;
+        return type.getSort() == Type.METHOD ? "java/lang/invoke/MethodType" : "java/lang/Class";
+    }
+
+    private static void push(State state, Object value) {
+        state.stack.add(value);
+        if (value == LONG || value == DOUBLE) state.stack.add(TOP);
+    }
+
+    private static void push(State state, Type type) {
+        if (type.getSort() != Type.VOID) push(state, value(type));
+    }
+
+    private static Object pop(State state) {
+        return state.stack.remove(state.stack.size() - 1);
+    }
+
+    private static void pop(State state, int words) {
+        for (int i = 0; i < words; i++) pop(state);
+    }
+
+    /**
+     * @return the value below the top `words` words
+     */
+    private static Object peek(State state, int words) {
+        return state.stack.get(state.stack.size() - 1 - words);
+    }
+
+    private void store(State state, int var, Object value) {
+        var locals = state.locals;
+        if (var > 0 && (locals[var - 1] == LONG || locals[var - 1] == DOUBLE)) locals[var - 1] = TOP;
+        locals[var] = value;
+        if (value == LONG || value == DOUBLE) locals[var + 1] = TOP;
+    }
+
+    private void execute(AbstractInsnNode insn, State state) {
+        int opcode = insn.getOpcode();
+        switch (opcode) {
+            case NOP, GOTO, RETURN -> {
+            }
+            case ACONST_NULL -> push(state, NULL);
+            case ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5, BIPUSH, SIPUSH -> push(state, INTEGER);
+            case LCONST_0, LCONST_1 -> push(state, LONG);
+            case FCONST_0, FCONST_1, FCONST_2 -> push(state, FLOAT);
+            case DCONST_0, DCONST_1 -> push(state, DOUBLE);
+            case LDC -> push(state, constant(((LdcInsnNode) insn).cst));
+            case ILOAD -> push(state, INTEGER);
+            case LLOAD -> push(state, LONG);
+            case FLOAD -> push(state, FLOAT);
+            case DLOAD -> push(state, DOUBLE);
+            case ALOAD -> push(state, state.locals[((VarInsnNode) insn).var]);
+            case IALOAD, BALOAD, CALOAD, SALOAD -> {
+                pop(state, 2);
+                push(state, INTEGER);
+            }
+            case LALOAD -> {
+                pop(state, 2);
+                push(state, LONG);
+            }
+            case FALOAD -> {
+                pop(state, 2);
+                push(state, FLOAT);
+            }
+            case DALOAD -> {
+                pop(state, 2);
+                push(state, DOUBLE);
+            }
+            case AALOAD -> {
+                pop(state);
+                var array = pop(state);
+                push(state, array instanceof String s && s.startsWith("[") ? value(Type.getType(s.substring(1))) : NULL);
+            }
+            case ISTORE, FSTORE, ASTORE -> store(state, ((VarInsnNode) insn).var, pop(state));
+            case LSTORE, DSTORE -> {
+                pop(state, 2);
+                store(state, ((VarInsnNode) insn).var, opcode == LSTORE ? LONG : DOUBLE);
+            }
+            case IASTORE, BASTORE, CASTORE, SASTORE, FASTORE, AASTORE -> pop(state, 3);
+            case LASTORE, DASTORE -> pop(state, 4);
+            case POP, MONITORENTER, MONITOREXIT, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL,
+                    TABLESWITCH, LOOKUPSWITCH, IRETURN, FRETURN, ARETURN, ATHROW -> pop(state);
+            case POP2, IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE,
+                    LRETURN, DRETURN -> pop(state, 2);
+            case DUP -> push(state, peek(state, 0));
+            case DUP_X1 -> {
+                var v1 = pop(state);
+                var v2 = pop(state);
+                state.stack.addAll(List.of(v1, v2, v1));
+            }
+            case DUP_X2 -> {
+                var v1 = pop(state);
+                var v2 = pop(state);
+                var v3 = pop(state);
+                state.stack.addAll(List.of(v1, v3, v2, v1));
+            }
+            case DUP2 -> {
+                var v2 = peek(state, 1);
+                var v1 = peek(state, 0);
+                state.stack.addAll(List.of(v2, v1));
+            }
+            case DUP2_X1 -> {
+                var v1 = pop(state);
+                var v2 = pop(state);
+                var v3 = pop(state);
+                state.stack.addAll(List.of(v2, v1, v3, v2, v1));
+            }
+            case DUP2_X2 -> {
+                var v1 = pop(state);
+                var v2 = pop(state);
+                var v3 = pop(state);
+                var v4 = pop(state);
+                state.stack.addAll(List.of(v2, v1, v4, v3, v2, v1));
+            }
+            case SWAP -> {
+                var v1 = pop(state);
+                var v2 = pop(state);
+                state.stack.addAll(List.of(v1, v2));
+            }
+            case IADD, ISUB, IMUL, IDIV, IREM, ISHL, ISHR, IUSHR, IAND, IOR, IXOR, FCMPL, FCMPG -> {
+                pop(state, 2);
+                push(state, INTEGER);
+            }
+            case LADD, LSUB, LMUL, LDIV, LREM, LAND, LOR, LXOR -> {
+                pop(state, 4);
+                push(state, LONG);
+            }
+            case FADD, FSUB, FMUL, FDIV, FREM -> {
+                pop(state, 2);
+                push(state, FLOAT);
+            }
+            case DADD, DSUB, DMUL, DDIV, DREM -> {
+                pop(state, 4);
+                push(state, DOUBLE);
+            }
+            case LSHL, LSHR, LUSHR -> {
+                pop(state, 3);
+                push(state, LONG);
+            }
+            case LCMP, DCMPL, DCMPG -> {
+                pop(state, 4);
+                push(state, INTEGER);
+            }
+            case INEG, I2B, I2C, I2S, F2I, ARRAYLENGTH, INSTANCEOF -> {
+                pop(state);
+                push(state, INTEGER);
+            }
+            case FNEG, I2F -> {
+                pop(state);
+                push(state, FLOAT);
+            }
+            case I2L, F2L -> {
+                pop(state);
+                push(state, LONG);
+            }
+            case I2D, F2D -> {
+                pop(state);
+                push(state, DOUBLE);
+            }
+            case LNEG, D2L -> {
+                pop(state, 2);
+                push(state, LONG);
+            }
+            case DNEG, L2D -> {
+                pop(state, 2);
+                push(state, DOUBLE);
+            }
+            case L2I, D2I -> {
+                pop(state, 2);
+                push(state, INTEGER);
+            }
+            case L2F, D2F -> {
+                pop(state, 2);
+                push(state, FLOAT);
+            }
+            case IINC -> store(state, ((IincInsnNode) insn).var, INTEGER);
+            case GETSTATIC -> push(state, Type.getType(((FieldInsnNode) insn).desc));
+            case PUTSTATIC -> pop(state, Type.getType(((FieldInsnNode) insn).desc).getSize());
+            case GETFIELD -> {
+                pop(state);
+                push(state, Type.getType(((FieldInsnNode) insn).desc));
+            }
+            case PUTFIELD -> pop(state, Type.getType(((FieldInsnNode) insn).desc).getSize() + 1);
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE -> {
+                var call = (MethodInsnNode) insn;
+                pop(state, (Type.getArgumentsAndReturnSizes(call.desc) >> 2) - 1);
+                if (opcode != INVOKESTATIC) {
+                    var receiver = pop(state);
+                    if (opcode == INVOKESPECIAL && call.name.equals("<init>")) {
+                        initialize(state, receiver, receiver == UNINITIALIZED_THIS ? owner : call.owner);
+                    }
+                }
+                push(state, Type.getReturnType(call.desc));
+            }
+            case INVOKEDYNAMIC -> {
+                var desc = ((InvokeDynamicInsnNode) insn).desc;
+                pop(state, (Type.getArgumentsAndReturnSizes(desc) >> 2) - 1);
+                push(state, Type.getReturnType(desc));
+            }
+            case NEW -> push(state, insn);
+            case NEWARRAY -> {
+                pop(state);
+                push(state, switch (((IntInsnNode) insn).operand) {
+                    case T_BOOLEAN -> "[Z";
+                    case T_CHAR -> "[C";
+                    case T_FLOAT -> "[F";
+                    case T_DOUBLE -> "[D";
+                    case T_BYTE -> "[B";
+                    case T_SHORT -> "[S";
+                    case T_INT -> "[I";
+                    default -> "[J";
+                });
+            }
+            case ANEWARRAY -> {
+                pop(state);
+                var component = ((TypeInsnNode) insn).desc;
+                push(state, component.startsWith("[") ? "[" + component : "[L" + component + ";");
+            }
+            case CHECKCAST -> {
+                pop(state);
+                push(state, ((TypeInsnNode) insn).desc);
+            }
+            case MULTIANEWARRAY -> {
+                var array = (MultiANewArrayInsnNode) insn;
+                pop(state, array.dims);
+                push(state, array.desc);
+            }
+            default -> throw new IllegalStateException("Unsupported opcode " + opcode + " in " + method.name);
+        }
+    }
+
+    /**
+     * A constructor call initializes every copy of the uninitialized value.
+     */
+    private static void initialize(State state, Object uninitialized, String type) {
+        if (uninitialized instanceof String) return;
+        for (int i = 0; i < state.locals.length; i++) {
+            if (state.locals[i] == uninitialized) state.locals[i] = type;
+        }
+        state.stack.replaceAll(v -> v == uninitialized ? type : v);
+    }
+}
@@ -0,0 +1,121 @@
+package org.imp.jvm;
+
+import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.GeneratedClassLoader;
+import org.imp.runtime.ListWrapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * `verification/simple/match.imp` scaled up: a match over a union of `cases`
+ * types, mostly structs, called with a value of every case in turn. `string[]`
+ * is a ListWrapper, which match tells apart by content type. Scores are per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MatchBenchmark {
+	static final int CALLS = 1024;
+
+	@Param({"4", "16", "64"})
+	public int cases;
+
+	private MethodHandle classify;
+	private Object[] values;
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(MatchBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * @param cases number of match cases, one per struct plus `int`, `string` and `string[]`
+	 */
+	static String generate(int cases) {
+		var imp = new StringBuilder();
+		var union = new StringBuilder("int | string | string[]");
+		var match = new StringBuilder("""
+				        int i -> {
+				            return i
+				        }
+				        string s -> {
+				            return 1
+				        }
+				        string[] l -> {
+				            return 2
+				        }
+				""");
+		for (int i = 0; i < cases - 3; i++) {
+			imp.append("""
+					struct S%1$d {
+					    v int
+					}
+					""".formatted(i));
+			union.append(" | S%d".formatted(i));
+			match.append("""
+					        S%d s -> {
+					            return s.v
+					        }
+					""".formatted(i));
+		}
+		imp.append("""
+				func classify(x %s) int {
+				    match x {
+				%s    }
+				    return -1
+				}
+				""".formatted(union, match));
+		return imp.toString();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		var root = Files.createTempDirectory("imp-match");
+		Files.writeString(root.resolve("matches.imp"), generate(cases));
+
+		var compiler = new Compiler();
+		compiler.compile(root.toString(), "matches.imp");
+		if (!compiler.errorData().isEmpty()) throw new IllegalStateException(compiler.errorData().toString());
+
+		var loader = new GeneratedClassLoader(compiler.classes(), root.resolve(".compile"));
+		var matches = Class.forName("matches", true, loader);
+		classify = MethodHandles.publicLookup().findStatic(matches, "_classify", MethodType.methodType(int.class, Object.class));
+
+		// A value of every case, in a shuffled order so no call site sees one type
+		var list = new ListWrapper("string");
+		values = new Object[cases];
+		values[0] = 3;
+		values[1] = "s";
+		values[2] = list;
+		for (int i = 0; i < cases - 3; i++) {
+			values[i + 3] = Class.forName("matches$S" + i, true, loader).getConstructor(int.class).newInstance(i);
+		}
+		Collections.shuffle(Arrays.asList(values), new Random(cases));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CALLS)
+	public int match() throws Throwable {
+		int total = 0;
+		for (int i = 0; i < CALLS; i++) {
+			total += (int) classify.invokeExact(values[i % values.length]);
+		}
+		return total;
+	}
+}
@@ -0,0 +1,102 @@
+package org.imp.jvm;
+
+import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.GeneratedClassLoader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run programs from `verification/` compiled with and without the
+ * PeepholeOptimizer. Class file sizes of every program are printed before the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PeepholeBenchmark {
+	static final Path verification = Path.of(System.getProperty("user.dir"), "verification");
+
+	static final List<String> programs = List.of(
+			"rosetta/binaryTree", "rosetta/factorial", "rosetta/fibonacci", "rosetta/fizzBuzz",
+			"rosetta/rosettaTemperatureConversion", "simple/Arithmetic", "simple/constantFolding",
+			"simple/for", "simple/ifElseLogical", "simple/match", "simple/postfix", "simple/relational",
+			"simple/unions", "simple/while"
+	);
+
+	@Param({"rosetta/fibonacci", "rosetta/factorial", "simple/for"})
+	public String program;
+
+	@Param({"true", "false"})
+	public boolean optimize;
+
+	private MethodHandle main;
+	private PrintStream out;
+
+	public static void main(String[] args) throws Exception {
+		int totalBefore = 0, totalAfter = 0;
+		var sizes = new StringBuilder();
+		for (var program : programs) {
+			int before = classBytes(program, false);
+			int after = classBytes(program, true);
+			totalBefore += before;
+			totalAfter += after;
+			sizes.append(String.format("%-40s %6d -> %6d bytes%n", program, before, after));
+		}
+		sizes.append(String.format("%-40s %6d -> %6d bytes%n", "total", totalBefore, totalAfter));
+		System.out.print(sizes);
+
+		Options options = new OptionsBuilder()
+				.include(PeepholeBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	static Compiler compile(String program, boolean optimize) throws Exception {
+		PeepholeOptimizer.ENABLED = optimize;
+		var compiler = new Compiler();
+		compiler.compile(verification.toString(), program + ".imp");
+		return compiler;
+	}
+
+	/**
+	 * @return size of all class files generated for `program`
+	 */
+	static int classBytes(String program, boolean optimize) throws Exception {
+		return compile(program, optimize).classes().values().stream().mapToInt(bytes -> bytes.length).sum();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		var compiler = compile(program, optimize);
+		var loader = new GeneratedClassLoader(compiler.classes(), verification.resolve(".compile"));
+		var mainClass = Class.forName(program.replace('/', '.'), true, loader);
+		main = MethodHandles.publicLookup().findStatic(mainClass, "main", MethodType.methodType(void.class, String[].class));
+
+		// Programs log every result, keep that out of the measurement
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public void run() throws Throwable {
+		main.invokeExact(new String[0]);
+	}
+}
@@ -0,0 +1,267 @@
+package org.imp.jvm;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.Map;
+
+/**
+ * Removes redundant instruction patterns left by CodegenVisitor, one method at
+ * a time, before the method is written to its ClassWriter.
+ * <ol>
+ *     <li>A constant or load that is immediately popped.</li>
+ *     <li>Boxing that is immediately unboxed again.</li>
+ *     <li>A store immediately followed by a load of the same local. The local is
+ *     dropped when that is its only load, otherwise the value is kept with `dup`.</li>
+ *     <li>A store to a local that is never read.</li>
+ *     <li>Jumps to the next instruction, jumps to a `goto`, and a conditional jump
+ *     over a `goto`.</li>
+ *     <li>Unreachable instructions after `goto`, `return` and `athrow`.</li>
+ * </ol>
+ * Frames and maximums are computed afterwards, by FrameComputer or the ClassWriter.
+ */
+public class PeepholeOptimizer implements Opcodes {
+    /**
+     * Change PeepholeOptimizer.ENABLED to `false` to write methods as generated
+     */
+    public static boolean ENABLED = true;
+
+    // box class -> primitive
+    private static final Map<String, Type> boxes = Map.of(
+            "java/lang/Integer", Type.INT_TYPE,
+            "java/lang/Float", Type.FLOAT_TYPE,
+            "java/lang/Double", Type.DOUBLE_TYPE,
+            "java/lang/Boolean", Type.BOOLEAN_TYPE
+    );
+
+    /**
+     * Apply every rule until none of them changes the method.
+     *
+     * @return number of instructions removed
+     */
+    public static int optimize(MethodNode method) {
+        var insns = method.instructions;
+        int before = insns.size();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            var insn = insns.getFirst();
+            while (insn != null) {
+                // Rules only remove `insn` and what follows it, so continue from the
+                // previous node where a new pattern may have formed
+                var previous = insn.getPrevious();
+                if (insn.getOpcode() >= 0 && (removePushPop(insns, insn)
+                        || removeBoxUnbox(insns, insn)
+                        || removeStoreLoad(method, insn)
+                        || removeDeadStore(insns, insn)
+                        || simplifyJump(insns, insn)
+                        || removeUnreachable(insns, insn))) {
+                    changed = true;
+                    insn = previous == null ? insns.getFirst() : previous;
+                } else {
+                    insn = insn.getNext();
+                }
+            }
+        }
+        return before - insns.size();
+    }
+
+    /**
+     * @return the node after `insn`, skipping line numbers and frames but not labels
+     */
+    private static AbstractInsnNode next(AbstractInsnNode insn) {
+        var next = insn.getNext();
+        while (next instanceof LineNumberNode || next instanceof FrameNode) next = next.getNext();
+        return next;
+    }
+
+    /**
+     * @return the first instruction at or after `insn`, skipping labels too
+     */
+    private static AbstractInsnNode real(AbstractInsnNode insn) {
+        while (insn != null && insn.getOpcode() < 0) insn = insn.getNext();
+        return insn;
+    }
+
+    private static AbstractInsnNode previousReal(AbstractInsnNode insn) {
+        var previous = insn.getPrevious();
+        while (previous != null && previous.getOpcode() < 0) previous = previous.getPrevious();
+        return previous;
+    }
+
+    private static boolean removePushPop(InsnList insns, AbstractInsnNode insn) {
+        var next = next(insn);
+        if (next == null) return false;
+        int pop = switch (insn.getOpcode()) {
+            case ACONST_NULL, ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5,
+                    FCONST_0, FCONST_1, FCONST_2, BIPUSH, SIPUSH, ILOAD, FLOAD, ALOAD, DUP -> POP;
+            case LCONST_0, LCONST_1, DCONST_0, DCONST_1, LLOAD, DLOAD, DUP2 -> POP2;
+            case LDC -> {
+                var cst = ((LdcInsnNode) insn).cst;
+                yield cst instanceof Long || cst instanceof Double ? POP2 : POP;
+            }
+            default -> -1;
+        };
+        if (pop == -1 || next.getOpcode() != pop) return false;
+        insns.remove(insn);
+        insns.remove(next);
+        return true;
+    }
+
+    /**
+     * `Integer.valueOf(I)` followed by an optional `checkcast Integer` and `intValue()`,
+     * and the same for the other boxes.
+     */
+    private static boolean removeBoxUnbox(InsnList insns, AbstractInsnNode insn) {
+        if (!(insn instanceof MethodInsnNode box) || box.getOpcode() != INVOKESTATIC || !box.name.equals("valueOf")) {
+            return false;
+        }
+        var primitive = boxes.get(box.owner);
+        if (primitive == null || !box.desc.equals("(" + primitive.getDescriptor() + ")L" + box.owner + ";")) return false;
+
+        var next = next(box);
+        AbstractInsnNode cast = null;
+        if (next instanceof TypeInsnNode t && t.getOpcode() == CHECKCAST && t.desc.equals(box.owner)) {
+            cast = next;
+            next = next(next);
+        }
+        if (!(next instanceof MethodInsnNode unbox) || unbox.getOpcode() != INVOKEVIRTUAL || !unbox.owner.equals(box.owner)
+                || !unbox.name.equals(primitive.getClassName() + "Value") || !unbox.desc.equals("()" + primitive.getDescriptor())) {
+            return false;
+        }
+        insns.remove(box);
+        if (cast != null) insns.remove(cast);
+        insns.remove(unbox);
+        return true;
+    }
+
+    private static boolean removeStoreLoad(MethodNode method, AbstractInsnNode insn) {
+        if (!(insn instanceof VarInsnNode store) || store.getOpcode() < ISTORE || store.getOpcode() > ASTORE) return false;
+        if (!(next(store) instanceof VarInsnNode load) || load.var != store.var
+                || load.getOpcode() != store.getOpcode() - (ISTORE - ILOAD)) {
+            return false;
+        }
+
+        var insns = method.instructions;
+        if (loads(insns, store) == 1) {
+            // Nothing else reads the local, leave the value on the stack instead
+            insns.remove(store);
+            insns.remove(load);
+        } else {
+            boolean wide = store.getOpcode() == LSTORE || store.getOpcode() == DSTORE;
+            insns.insertBefore(store, new InsnNode(wide ? DUP2 : DUP));
+            insns.remove(load);
+        }
+        return true;
+    }
+
+    /**
+     * A store to a local that is never read becomes a `pop`.
+     */
+    private static boolean removeDeadStore(InsnList insns, AbstractInsnNode insn) {
+        if (!(insn instanceof VarInsnNode store) || store.getOpcode() < ISTORE || store.getOpcode() > ASTORE) return false;
+        if (loads(insns, store) != 0) return false;
+        boolean wide = store.getOpcode() == LSTORE || store.getOpcode() == DSTORE;
+        insns.set(store, new InsnNode(wide ? POP2 : POP));
+        return true;
+    }
+
+    /**
+     * @return number of loads and `iinc`s that can read the value `store` writes.
+     * Slots are reused by sibling scopes, so only loads of the same kind count.
+     */
+    private static int loads(InsnList insns, VarInsnNode store) {
+        int load = store.getOpcode() - (ISTORE - ILOAD);
+        int loads = 0;
+        for (var i = insns.getFirst(); i != null; i = i.getNext()) {
+            if (i instanceof VarInsnNode v && v.var == store.var && v.getOpcode() == load) loads++;
+            if (i instanceof IincInsnNode iinc && iinc.var == store.var && load == ILOAD) loads++;
+        }
+        return loads;
+    }
+
+    private static boolean simplifyJump(InsnList insns, AbstractInsnNode insn) {
+        if (!(insn instanceof JumpInsnNode jump)) return false;
+
+        // Jump to the next instruction
+        var target = real(jump.label);
+        if (target == null) return false;
+        if (jump.getOpcode() == GOTO && real(jump.getNext()) == target) {
+            insns.remove(jump);
+            return true;
+        }
+
+        // Jump to a goto
+        if (target instanceof JumpInsnNode next && next.getOpcode() == GOTO && next.label != jump.label && next != jump) {
+            jump.label = next.label;
+            return true;
+        }
+
+        // `ifeq a; goto b; a:` is `ifne b; a:`
+        int inverted = invert(jump.getOpcode());
+        if (inverted != -1 && next(jump) instanceof JumpInsnNode over && over.getOpcode() == GOTO
+                && real(over.getNext()) == target && !invertsFloatOrdering(jump)) {
+            insns.set(jump, new JumpInsnNode(inverted, over.label));
+            insns.remove(over);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * `fcmpg`/`fcmpl` pick how NaN compares for the jump that follows them, inverting
+     * an ordering jump would change that.
+     */
+    private static boolean invertsFloatOrdering(JumpInsnNode jump) {
+        var previous = previousReal(jump);
+        if (previous == null) return false;
+        return switch (previous.getOpcode()) {
+            case FCMPL, FCMPG, DCMPL, DCMPG -> jump.getOpcode() != IFEQ && jump.getOpcode() != IFNE;
+            default -> false;
+        };
+    }
+
+    private static int invert(int opcode) {
+        return switch (opcode) {
+            case IFEQ -> IFNE;
+            case IFNE -> IFEQ;
+            case IFLT -> IFGE;
+            case IFGE -> IFLT;
+            case IFGT -> IFLE;
+            case IFLE -> IFGT;
+            case IF_ICMPEQ -> IF_ICMPNE;
+            case IF_ICMPNE -> IF_ICMPEQ;
+            case IF_ICMPLT -> IF_ICMPGE;
+            case IF_ICMPGE -> IF_ICMPLT;
+            case IF_ICMPGT -> IF_ICMPLE;
+            case IF_ICMPLE -> IF_ICMPGT;
+            case IF_ACMPEQ -> IF_ACMPNE;
+            case IF_ACMPNE -> IF_ACMPEQ;
+            case IFNULL -> IFNONNULL;
+            case IFNONNULL -> IFNULL;
+            default -> -1;
+        };
+    }
+
+    private static boolean removeUnreachable(InsnList insns, AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+            case GOTO, RETURN, IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, ATHROW -> {
+                boolean changed = false;
+                var next = insn.getNext();
+                while (next != null && !(next instanceof LabelNode)) {
+                    var following = next.getNext();
+                    if (next.getOpcode() >= 0) {
+                        insns.remove(next);
+                        changed = true;
+                    }
+                    next = following;
+                }
+                return changed;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+}
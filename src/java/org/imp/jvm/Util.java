@@ -1,5 +1,6 @@
 package org.imp.jvm;
 
+import org.imp.jvm.errors.FatalError;
 import org.imp.jvm.types.ImpType;
 import org.javatuples.Pair;
 
@@ -10,6 +11,11 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Util {
+    /**
+     * Change Util.EXITS to `false` to make exit() throw a FatalError instead of stopping the JVM
+     */
+    public static boolean EXITS = true;
+
     public static <A, B, O> Stream<O> zipMap(List<? extends A> a, List<? extends B> b, BiFunction<A, B, ? extends O> lambda) throws ArrayIndexOutOfBoundsException {
         var l = new ArrayList<O>();
         if (a.size() == b.size()) {
@@ -39,6 +45,7 @@ public class Util {
 
     public static void exit(String message, int code) {
         System.err.println(message);
+        if (!EXITS) throw new FatalError(message, code);
         System.exit(code);
     }
 
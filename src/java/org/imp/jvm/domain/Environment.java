@@ -2,21 +2,19 @@ package org.imp.jvm.domain;
 
 import org.apache.commons.collections4.map.LinkedMap;
 import org.imp.jvm.errors.Comptime;
+import org.imp.jvm.parser.Expr;
 import org.imp.jvm.parser.Node;
 import org.imp.jvm.tool.Compiler;
 import org.imp.jvm.types.ImpType;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Environment {
 
 
 	// Variables referencing values of the above
-	private final LinkedMap<String, ImpType> variables = new LinkedMap<>();
+	private final LinkedMap<String, Symbol> variables = new LinkedMap<>();
 
-	private final Map<String, Mutability> mutability = new HashMap<>();
 	private Environment parent;
 
 	public Environment() {
@@ -25,8 +23,14 @@ public class Environment {
 
 
 	public void addVariable(String name, ImpType type) {
-		variables.put(name, type);
-		mutability.put(name, Mutability.Val);
+		var symbol = variables.get(name);
+		if (symbol == null) {
+			variables.put(name, new Symbol(name, type));
+		} else {
+			// Keep the symbol identifiers may already be bound to
+			symbol.type = type;
+			symbol.mutability = Mutability.Val;
+		}
 	}
 
 	public void addVariableOrError(Compiler compiler, String name, ImpType type, File file, Node node) {
@@ -46,26 +50,42 @@ public class Environment {
 		this.parent = parent;
 	}
 
-	public ImpType getVariable(String name) {
-		if (variables.get(name) != null) {
-			return variables.get(name);
-		}
-		if (parent != null) {
-			return parent.getVariable(name);
+	/**
+	 * @return the symbol declaring `name` in this or the nearest enclosing environment
+	 */
+	public Symbol lookup(String name) {
+		for (var e = this; e != null; e = e.parent) {
+			var symbol = e.variables.get(name);
+			if (symbol != null) return symbol;
 		}
 		return null;
 	}
 
-	public Mutability getVariableMutability(String name) {
-		if (mutability.get(name) != null) {
-			return mutability.get(name);
+	/**
+	 * Bind `identifier` to its symbol on first use. Names that are not declared
+	 * yet, such as functions later in the file, stay unbound and are looked up
+	 * again by the next pass.
+	 */
+	public Symbol resolve(Expr.Identifier identifier) {
+		if (identifier.symbol == null) {
+			identifier.symbol = lookup(identifier.identifier.source());
 		}
-		if (parent != null) {
-			return parent.getVariableMutability(name);
+		return identifier.symbol;
+	}
+
+	public ImpType getVariable(String name) {
+		for (var e = this; e != null; e = e.parent) {
+			var symbol = e.variables.get(name);
+			if (symbol != null && symbol.type != null) return symbol.type;
 		}
 		return null;
 	}
 
+	public Mutability getVariableMutability(String name) {
+		var symbol = lookup(name);
+		return symbol == null ? null : symbol.mutability;
+	}
+
 	public <T> T getVariableTyped(String name, Class<T> clazz) {
 		var v = getVariable(name);
 		if (clazz.isInstance(v)) {
@@ -76,15 +96,17 @@ public class Environment {
 	}
 
 	public void setVariableMutability(String name, Mutability m) {
-		if (mutability.get(name) != null) {
-			mutability.put(name, m);
+		var symbol = variables.get(name);
+		if (symbol != null) {
+			symbol.mutability = m;
 		}
 
 	}
 
 	public void setVariableType(String name, ImpType type) {
-		if (variables.get(name) != null) {
-			variables.put(name, type);
+		var symbol = variables.get(name);
+		if (symbol != null && symbol.type != null) {
+			symbol.type = type;
 		}
 	}
 
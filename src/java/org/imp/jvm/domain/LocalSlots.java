@@ -0,0 +1,45 @@
+package org.imp.jvm.domain;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Local variable slots of the method being generated. Slots are handed out in
+ * order and given back when the scope that took them ends, so sibling blocks
+ * share slots. Which variable a slot holds is kept on its Symbol.
+ */
+public class LocalSlots {
+
+	// Value of next when each open scope was entered
+	private final Deque<Integer> scopes = new ArrayDeque<>();
+	private int next;
+
+	/**
+	 * Slots start after the arguments of a method with the given access flags and descriptor.
+	 */
+	public LocalSlots(int access, String descriptor) {
+		next = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+		if ((access & Opcodes.ACC_STATIC) != 0) next--;
+		scopes.push(next);
+	}
+
+	public void enter() {
+		scopes.push(next);
+	}
+
+	/**
+	 * Give back every slot taken since the matching enter().
+	 */
+	public void exit() {
+		next = scopes.pop();
+	}
+
+	public int allocate(Type type) {
+		int slot = next;
+		next += type.getSize();
+		return slot;
+	}
+}
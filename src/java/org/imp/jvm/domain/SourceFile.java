@@ -16,7 +16,7 @@ import java.util.function.Function;
 
 public class SourceFile {
 	public final File file;
-	public final List<Stmt> stmts;
+	public final List<Stmt> stmts = new ArrayList<>();
 	public final LinkedMap<String, ImpType> exports = new LinkedMap<>();
 	public final Environment rootEnvironment = new Environment();
 	/**
@@ -37,7 +37,19 @@ public class SourceFile {
 	// filename -> SourceFile
 	private final LinkedMap<String, SourceFile> imports = new LinkedMap<>();
 
+	/**
+	 * Build cache state. When `cached` is true the class files from the previous
+	 * build are reused and the file is never parsed.
+	 */
+	public boolean cached = false;
+	public String contentHash;
+	public String exportHash;
+
 	public SourceFile(String projectRoot, String relativePath, String name) throws FileNotFoundException {
+		this(projectRoot, relativePath, name, true);
+	}
+
+	public SourceFile(String projectRoot, String relativePath, String name, boolean parse) throws FileNotFoundException {
 		/*
 		 * We need-
 		 * 1. project root directory
@@ -53,9 +65,13 @@ public class SourceFile {
 		String fullPath = FilenameUtils.separatorsToUnix(Path.of(projectRoot, relativePath, this.name + ".imp").toString());
 		this.file = new File(fullPath);
 
+		if (parse) parse();
+	}
+
+	public void parse() throws FileNotFoundException {
 		Tokenizer tokenizer = new Tokenizer(file);
 		var parser = new org.imp.jvm.parser.Parser(tokenizer);
-		this.stmts = parser.parse();
+		this.stmts.addAll(parser.parse());
 	}
 
 	public <R> List<R> acceptVisitor(IVisitor<? extends R> visitor) {
@@ -73,6 +89,9 @@ public class SourceFile {
 		imports.put(s, sourceFile);
 	}
 
+	public List<SourceFile> getImports() {
+		return imports.values().stream().toList();
+	}
 
 	public <T extends Stmt, R> void filter(Class<? extends T> kind, Function<? super T, R> function) {
 		for (var s : stmts) {
@@ -0,0 +1,24 @@
+package org.imp.jvm.domain;
+
+import org.imp.jvm.types.ImpType;
+
+/**
+ * A name declared in an Environment. Identifiers are bound to their symbol the
+ * first time a pass resolves them, and later passes read it straight from the
+ * node instead of walking the environment chain by name.
+ */
+public class Symbol {
+	public final String name;
+	public ImpType type;
+	public Mutability mutability = Mutability.Val;
+
+	// Slot of the local variable in the method being generated, or -1
+	public int local = -1;
+	// Index of the argument in the method being generated, or -1
+	public int arg = -1;
+
+	public Symbol(String name, ImpType type) {
+		this.name = name;
+		this.type = type;
+	}
+}
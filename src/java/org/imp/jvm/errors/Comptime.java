@@ -48,7 +48,8 @@ public enum Comptime {
     VoidUsage(20, "Cannot use the result of a void method in an expression.", "Methods returning `void` don't have any result so there is no return type to use."),
     MatchCoverage(21, "Not all entries in UnionType `{0}` are covered by this match statement. Add cases for {1}.", "All possible values of a UnionType must be handled."),
     Unreachable(22, "Unreachable code detected.", null),
-    FieldNotPresent(23, "Field `{0}` not present on type `{1}`.", null);
+    FieldNotPresent(23, "Field `{0}` not present on type `{1}`.", null),
+    CircularImport(24, "Import of `{0}` creates a circular dependency.", "Move the shared declarations into a module that both files can import.");
 
 
     private static final AnsiFormat RED = new AnsiFormat(Attribute.RED_TEXT());
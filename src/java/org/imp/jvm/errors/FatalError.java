@@ -0,0 +1,17 @@
+package org.imp.jvm.errors;
+
+/**
+ * Thrown by {@link org.imp.jvm.Util#exit(String, int)} in place of System.exit
+ * while {@link org.imp.jvm.Util#EXITS} is off, so a compiler that must not stop
+ * the JVM, like the build server, can end the build with `status` instead.
+ */
+public class FatalError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final int status;
+
+    public FatalError(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -1,5 +1,6 @@
 package org.imp.jvm.parser;
 
+import org.imp.jvm.domain.Symbol;
 import org.imp.jvm.parser.tokenizer.Location;
 import org.imp.jvm.parser.tokenizer.Token;
 import org.imp.jvm.types.ImpType;
@@ -284,6 +285,8 @@ public abstract class Expr implements Node {
     // identifier
     public static class Identifier extends Expr {
         public final Token identifier;
+        // Bound by Environment.resolve
+        public Symbol symbol;
 
         public Identifier(Location location, Token identifier) {
             super(location);
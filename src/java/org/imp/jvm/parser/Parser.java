@@ -172,8 +172,7 @@ public class Parser extends ParserBase {
         if (stmt instanceof Stmt.Exportable) {
             return new Stmt.Export(loc, stmt);
         } else {
-            System.err.println("Can only export struct, type alias, variable, enum or function.");
-            System.exit(65);
+            Util.exit("Can only export struct, type alias, variable, enum or function.", 65);
             return null;
         }
     }
@@ -1,5 +1,6 @@
 package org.imp.jvm.parser;
 
+import org.imp.jvm.Util;
 import org.imp.jvm.parser.tokenizer.Location;
 import org.imp.jvm.parser.tokenizer.Token;
 import org.imp.jvm.parser.tokenizer.TokenType;
@@ -26,9 +27,7 @@ public class ParserBase {
 
     private static void report(int line, String where,
                                String message) {
-        System.err.println(
-                "[line " + line + "] Parser error" + where + ": " + message);
-        System.exit(1);
+        Util.exit("[line " + line + "] Parser error" + where + ": " + message, 1);
     }
 
     public Token consume() {
@@ -1,16 +1,45 @@
 package org.imp.jvm.parser.tokenizer;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.Iterator;
 
 public class Tokenizer implements Iterator<Token> {
 	private final StringBuilder sb = new StringBuilder();
+	/**
+	 * Entire source file, used for index-based lookahead. Null in streaming mode.
+	 */
+	private final char[] buffer;
 	private final PushbackReader reader;
 	public int line = 1;
 	public int col = 1;
+	private int index = 0;
 
 	public Tokenizer(File file) throws FileNotFoundException {
-		this.reader = new PushbackReader(new FileReader(file), 5);
+		this(file, true);
+	}
+
+	/**
+	 * @param buffered load the file into memory once instead of peeking through a PushbackReader
+	 */
+	public Tokenizer(File file, boolean buffered) throws FileNotFoundException {
+		if (buffered) {
+			this.buffer = readAll(file);
+			this.reader = null;
+		} else {
+			this.buffer = null;
+			this.reader = new PushbackReader(new FileReader(file), 5);
+		}
+	}
+
+	private static char[] readAll(File file) throws FileNotFoundException {
+		try {
+			return new String(Files.readAllBytes(file.toPath())).toCharArray();
+		} catch (IOException e) {
+			var notFound = new FileNotFoundException(file.getPath());
+			notFound.initCause(e);
+			throw notFound;
+		}
 	}
 
 	@Override
@@ -89,11 +118,9 @@ public class Tokenizer implements Iterator<Token> {
 					} else if (peekNext() == '*') {
 						advance();
 						advance();
-						String nextTwo;
 						do {
 							advance();
-							nextTwo = String.valueOf(peek()) + peekNext();
-						} while (!nextTwo.equals("*/"));
+						} while (peek() != '\0' && !(peek() == '*' && peekNext() == '/'));
 						advance();
 						advance();
 					} else {
@@ -112,6 +139,17 @@ public class Tokenizer implements Iterator<Token> {
 	 * @return char
 	 */
 	private char advance() {
+		if (buffer != null) {
+			if (index >= buffer.length) return '\0';
+			char c = buffer[index++];
+			if (c == '\n') {
+				line++;
+				col = 1;
+			} else {
+				col++;
+			}
+			return c;
+		}
 		try {
 			int i = reader.read();
 			if (i == -1) return '\0';
@@ -220,6 +258,9 @@ public class Tokenizer implements Iterator<Token> {
 	 * @return char
 	 */
 	private char peek() {
+		if (buffer != null) {
+			return index < buffer.length ? buffer[index] : '\0';
+		}
 		try {
 			int i = reader.read();
 			if (i == -1) return '\0';
@@ -237,10 +278,16 @@ public class Tokenizer implements Iterator<Token> {
 	 * @return char
 	 */
 	private char peekNext() {
+		if (buffer != null) {
+			return index + 1 < buffer.length ? buffer[index + 1] : '\0';
+		}
 		try {
 			int i = reader.read();
 			int j = reader.read();
-			if (j == -1) return '\0';
+			if (j == -1) {
+				if (i != -1) reader.unread(i);
+				return '\0';
+			}
 			reader.unread(j);
 			reader.unread(i);
 			return (char) j;
@@ -0,0 +1,74 @@
+package org.imp.jvm.parser.tokenizer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compare tokens/sec of the buffered and PushbackReader tokenizer modes
+ * over every source file in the `verification/` project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TokenizerBenchmark {
+
+	@Param({"true", "false"})
+	public boolean buffered;
+
+	private List<File> corpus;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(TokenizerBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		try (Stream<Path> paths = Files.walk(Path.of(System.getProperty("user.dir"), "verification"))) {
+			corpus = paths.filter(p -> p.toString().endsWith(".imp")).map(Path::toFile).toList();
+		}
+	}
+
+	@Benchmark
+	public void tokenize(TokenCounter counter) throws FileNotFoundException {
+		for (var file : corpus) {
+			var tokenizer = new Tokenizer(file, buffered);
+			Token tok;
+			do {
+				tok = tokenizer.next();
+				counter.tokens++;
+			} while (tok.type() != TokenType.EOF);
+		}
+	}
+
+	/**
+	 * Reports the number of tokens produced, so results read as tokens/sec.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class TokenCounter {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tokens = 0;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package org.imp.jvm.tool;
+
+import org.apache.commons.io.FilenameUtils;
+import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.types.TypeSignature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Per-project record of what the previous build compiled, stored next to the
+ * ExportTable in imp.db. A file can reuse its class files when its content hash is
+ * unchanged and every module it imports still has the same export signatures.
+ * The cache is disabled when no project database is connected.
+ */
+public class BuildCache {
+    static PreparedStatement psGetEntry;
+    static PreparedStatement psPutEntry;
+
+    public static void createTable(Statement statement, boolean clean) throws SQLException {
+        if (clean) statement.executeUpdate("drop table if exists BuildCache");
+        statement.executeUpdate("""
+                create table if not exists BuildCache
+                (
+                    source string primary key not null,
+                    contentHash string not null,
+                    exportHash string not null,
+                    -- one line per import: relativePath, name, exportHash
+                    imports string not null
+                );
+                """);
+    }
+
+    public static void prepare(Connection connection) throws SQLException {
+        psGetEntry = connection.prepareStatement("select contentHash, exportHash, imports from BuildCache where source=?");
+        psPutEntry = connection.prepareStatement("""
+                replace into BuildCache(source, contentHash, exportHash, imports)
+                values (?,?,?,?)
+                """);
+    }
+
+    static void disable() {
+        psGetEntry = null;
+        psPutEntry = null;
+    }
+
+    public static boolean enabled() {
+        return psGetEntry != null;
+    }
+
+    public static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hash every exported name with its encoded type signature, in declaration order.
+     */
+    public static String exportHash(SourceFile source) {
+        var bytes = new ByteArrayOutputStream();
+        try {
+            for (var name : source.exports.keySet()) {
+                var type = source.exports.get(name);
+                bytes.write((name + "\t" + type.kind() + "\n").getBytes(StandardCharsets.UTF_8));
+                bytes.write(TypeSignature.encode(type));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return hash(bytes.toByteArray());
+    }
+
+    /**
+     * Hash the file's content and look up the record left by the previous build.
+     *
+     * @return the entry, if the content is unchanged and the file's class file still exists.
+     */
+    public static Optional<Entry> lookup(SourceFile source) throws FileNotFoundException {
+        if (!enabled()) return Optional.empty();
+        try {
+            source.contentHash = hash(Files.readAllBytes(source.file.toPath()));
+        } catch (IOException e) {
+            var notFound = new FileNotFoundException(source.file.getPath());
+            notFound.initCause(e);
+            throw notFound;
+        }
+
+        var classFile = Path.of(source.projectRoot, ".compile", source.getFullRelativePath() + ".class");
+        if (!Files.exists(classFile)) return Optional.empty();
+
+        var entry = get(source.file);
+        return entry.filter(e -> e.contentHash().equals(source.contentHash));
+    }
+
+    private static synchronized Optional<Entry> get(File file) {
+        try {
+            psGetEntry.setString(1, FilenameUtils.separatorsToUnix(file.getPath()));
+            var rs = psGetEntry.executeQuery();
+            if (!rs.next()) return Optional.empty();
+
+            var imports = new ArrayList<Dependency>();
+            for (var line : rs.getString(3).split("\n")) {
+                if (line.isEmpty()) continue;
+                var parts = line.split("\t", -1);
+                imports.add(new Dependency(parts[0], parts[1], parts[2]));
+            }
+            return Optional.of(new Entry(rs.getString(1), rs.getString(2), imports));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Record every file that was compiled in this build, in one transaction. Call only
+     * after the build succeeded and {@link ExportTable#flush()} ran, so a failed build
+     * never leaves entries that look up to date.
+     */
+    public static synchronized void save(Collection<SourceFile> sources) {
+        if (!enabled()) return;
+        var connection = ExportTable.connection;
+        try {
+            connection.setAutoCommit(false);
+            for (var source : sources) {
+                if (source.cached || source.contentHash == null || source.exportHash == null) continue;
+                String imports = source.getImports().stream()
+                        .map(d -> d.relativePath + "\t" + d.name + "\t" + d.exportHash)
+                        .collect(Collectors.joining("\n"));
+
+                psPutEntry.setString(1, FilenameUtils.separatorsToUnix(source.file.getPath()));
+                psPutEntry.setString(2, source.contentHash);
+                psPutEntry.setString(3, source.exportHash);
+                psPutEntry.setString(4, imports);
+                psPutEntry.addBatch();
+            }
+            psPutEntry.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param imports in source order
+     */
+    public record Entry(String contentHash, String exportHash, List<Dependency> imports) {
+    }
+
+    public record Dependency(String relativePath, String name, String exportHash) {
+    }
+}
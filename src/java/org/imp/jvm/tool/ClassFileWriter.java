@@ -0,0 +1,119 @@
+package org.imp.jvm.tool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writer stage for generated class files. Codegen threads hand over byte arrays
+ * through a bounded queue and a single thread writes them to disk, creating each
+ * output directory only once.
+ */
+public class ClassFileWriter implements AutoCloseable {
+    private static final ClassFile POISON = new ClassFile(null, null);
+
+    private final BlockingQueue<ClassFile> queue;
+    private final Set<Path> createdDirectories = new HashSet<>();
+    private final Thread thread;
+    private IOException failure;
+    // A class file that was never queued because the submitting thread was interrupted
+    private volatile Path dropped;
+    private long ioTime = 0;
+    private int written = 0;
+
+    public ClassFileWriter(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::drain, "imp-class-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a class file for writing, blocking while the queue is full. If the
+     * calling thread is interrupted the file is not written and close() fails.
+     */
+    public void submit(Path path, byte[] bytes) {
+        try {
+            queue.put(new ClassFile(path, bytes));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped = path;
+        }
+    }
+
+    /**
+     * @return nanoseconds the writer thread spent on disk I/O
+     */
+    public long ioTime() {
+        return ioTime;
+    }
+
+    public int written() {
+        return written;
+    }
+
+    /**
+     * Wait until every submitted class file is on disk.
+     *
+     * @throws IOException the first write failure, if any, or an
+     *                     InterruptedIOException if a class file was not written
+     *                     because of an interrupt
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(POISON);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing class files");
+        }
+        if (failure != null) throw failure;
+        if (dropped != null) throw new InterruptedIOException("Interrupted before writing " + dropped);
+    }
+
+    private void drain() {
+        while (true) {
+            ClassFile classFile;
+            try {
+                classFile = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (classFile == POISON) return;
+            if (failure != null) continue;
+
+            long start = System.nanoTime();
+            try {
+                write(classFile);
+                written++;
+            } catch (IOException e) {
+                failure = e;
+            }
+            ioTime += System.nanoTime() - start;
+        }
+    }
+
+    private void write(ClassFile classFile) throws IOException {
+        var parent = classFile.path().getParent();
+        if (parent != null && createdDirectories.add(parent)) {
+            Files.createDirectories(parent);
+        }
+        try (var channel = FileChannel.open(classFile.path(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var buffer = ByteBuffer.wrap(classFile.bytes());
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    private record ClassFile(Path path, byte[] bytes) {
+    }
+}
@@ -2,29 +2,36 @@ package org.imp.jvm.tool;
 
 import org.apache.commons.io.FilenameUtils;
 import org.imp.jvm.BytecodeGenerator;
+import org.imp.jvm.Constants;
 import org.imp.jvm.Util;
 import org.imp.jvm.domain.SourceFile;
 import org.imp.jvm.errors.Comptime;
-import org.imp.jvm.parser.Stmt;
-import org.imp.jvm.types.ImpType;
-import org.imp.jvm.visitors.EnvironmentVisitor;
+import org.imp.jvm.types.TypeTable;
+import org.imp.jvm.visitors.OptimizerVisitor;
 import org.imp.jvm.visitors.PrettyPrinterVisitor;
 import org.imp.jvm.visitors.TypeCheckVisitor;
 
-import java.io.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-public record Compiler(List<Comptime.Data> errorData, List<SourceFile> compilationSet, boolean developmentMode) {
+/**
+ * @param classes binary class name -> bytes of every class generated by the last build
+ */
+public record Compiler(List<Comptime.Data> errorData, List<SourceFile> compilationSet, boolean developmentMode,
+                       Map<String, byte[]> classes) {
 
 
     public Compiler() {
-        this(new ArrayList<>(), new ArrayList<>(), true);
+        this(new ArrayList<>(), new ArrayList<>(), true, new ConcurrentHashMap<>());
     }
 
     /**
@@ -39,22 +46,45 @@ public record Compiler(List<Comptime.Data> errorData, List<SourceFile> compilati
         String relativePath = FilenameUtils.getPath(filename);
         String name = FilenameUtils.getName(filename);
 
+        classes.clear();
+        // Interned types of a previous build are never looked up again
+        TypeTable.reset();
         var entry = parse(projectRoot, relativePath, name);
         Map<String, SourceFile> compilationSet = new HashMap<>();
         Comptime.killIfErrors(this, "Correct parser errors before continuing.");
 
         Timer.log("build dependency graph");
 
-        TypeCheckVisitor typeCheckVisitor = new TypeCheckVisitor(this, entry.rootEnvironment, entry);
-        entry.acceptVisitor(typeCheckVisitor);
-        Timer.log("Type checking done");
+        if (!entry.cached) {
+            TypeCheckVisitor typeCheckVisitor = new TypeCheckVisitor(this, entry.rootEnvironment, entry);
+            entry.acceptVisitor(typeCheckVisitor);
+            Timer.log("Type checking done");
+            if (!typeCheckVisitor.specialized.isEmpty()) {
+                Timer.log("specialize " + typeCheckVisitor.specialized.stream()
+                        .map(ft -> ft.name + " " + ft.specializations.size() + "x")
+                        .collect(Collectors.joining(", ")));
+            }
+
+            Comptime.killIfErrors(this, "Correct type errors before compilation can continue.");
 
-        Comptime.killIfErrors(this, "Correct type errors before compilation can continue.");
+            if (OptimizerVisitor.ENABLED) {
+                var optimizer = new OptimizerVisitor(entry.rootEnvironment);
+                optimizer.optimize(entry.stmts);
+                if (!optimizer.inlined.isEmpty()) {
+                    Timer.log("inline " + optimizer.inlined.entrySet().stream()
+                            .map(e -> e.getKey().name + " " + e.getValue() + "x")
+                            .collect(Collectors.joining(", ")));
+                }
+                Timer.log("fold constants, " + optimizer.removed + " nodes removed");
+            }
 
-        var pretty = new PrettyPrinterVisitor(entry.rootEnvironment);
-        Util.println(pretty.print(entry.stmts));
+            var pretty = new PrettyPrinterVisitor(entry.rootEnvironment);
+            Util.println(pretty.print(entry.stmts));
+        }
 
         for (var s : compilationSet()) {
+            // Unchanged files keep the class files from the previous build
+            if (s.cached) continue;
             if (!compilationSet.containsKey(s.getFullRelativePath())) {
                 compilationSet.put(s.getFullRelativePath(), s);
             }
@@ -63,6 +93,10 @@ public record Compiler(List<Comptime.Data> errorData, List<SourceFile> compilati
         output(compilationSet);
         Timer.log("generate bytecode");
 
+        ExportTable.flush();
+        BuildCache.save(compilationSet.values());
+        Timer.log("save exports and build cache");
+
         Timer.LOG = true;
         Timer.logTotalTime();
 
@@ -71,117 +105,74 @@ public record Compiler(List<Comptime.Data> errorData, List<SourceFile> compilati
         return base.replace("/", ".");
     }
 
+    /**
+     * Generate bytecode for every file concurrently and hand the class files to a
+     * single writer thread.
+     */
     public void output(Map<String, ? extends SourceFile> compilationSet) throws Comptime.CompilerError {
 
         BytecodeGenerator bytecodeGenerator = new BytecodeGenerator();
+        var errors = new LinkedHashMap<SourceFile, List<Comptime.Data>>();
+        var codegenTime = new AtomicLong();
+
+        var writer = new ClassFileWriter(64);
+        var futures = new ArrayList<CompletableFuture<Void>>();
         for (var key : compilationSet.keySet()) {
             var source = compilationSet.get(key);
-            var allByteUnits = bytecodeGenerator.generate(this, source);
-            Comptime.killIfErrors(this, "Correct build errors before compilation can complete.");
-
-            // Generate outer class
-            var byteUnit = allByteUnits.getValue0().toByteArray();
-            String base = FilenameUtils.removeExtension(source.getFullRelativePath());
-            String fileName = Path.of(source.projectRoot, ".compile", base + ".class").toString();
-            File tmp = new File(fileName);
-            //noinspection ResultOfMethodCallIgnored
-            tmp.getParentFile().mkdirs();
-            OutputStream output;
+            var fileErrors = new ArrayList<Comptime.Data>();
+            errors.put(source, fileErrors);
+
+            futures.add(CompletableFuture.runAsync(() -> {
+                long start = System.nanoTime();
+                var fileCompiler = new Compiler(fileErrors, compilationSet(), developmentMode(), classes());
+                var allByteUnits = bytecodeGenerator.generate(fileCompiler, source);
+                if (!fileErrors.isEmpty()) return;
+
+                // Generate outer class
+                String base = FilenameUtils.removeExtension(source.getFullRelativePath());
+                var outer = allByteUnits.getValue0().toByteArray();
+
+                // Generate inner classes
+                var inner = new HashMap<String, byte[]>();
+                for (var p : allByteUnits.getValue1().entrySet()) {
+                    inner.put(p.getKey().qualifiedName, p.getValue().toByteArray());
+                }
+                codegenTime.addAndGet(System.nanoTime() - start);
+
+                classes.put(base.replace('/', '.'), outer);
+                inner.forEach((innerName, bytes) -> classes.put(innerName.replace('/', '.'), bytes));
+                writer.submit(Path.of(source.projectRoot, ".compile", base + ".class"), outer);
+                inner.forEach((innerName, bytes) -> writer.submit(Path.of(source.projectRoot, ".compile", innerName + ".class"), bytes));
+            }));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        } finally {
             try {
-                output = new FileOutputStream(fileName);
-                output.write(byteUnit);
-                output.close();
+                writer.close();
             } catch (IOException e) {
-                System.err.println("The above call to mkdirs() should have worked.");
-                System.exit(9);
+                Util.exit("Could not write class files: " + e.getMessage(), Constants.EIO);
             }
-
-            // Generate inner classes
-            for (var p : allByteUnits.getValue1().entrySet()) {
-
-                var st = p.getKey();
-                var innerCw = p.getValue();
-
-                String innerName = source.getFullRelativePath() + "$" + st.name;
-
-                fileName = Path.of(source.projectRoot, ".compile", innerName + ".class").toString();
-                tmp = new File(fileName);
-                //noinspection ResultOfMethodCallIgnored
-                tmp.getParentFile().mkdirs();
-                try {
-                    output = new FileOutputStream(fileName);
-                    output.write(innerCw.toByteArray());
-                    output.close();
-                } catch (IOException e) {
-                    System.err.println("The above call to mkdirs() should have worked.");
-                    System.exit(9);
-                }
-            }
-
         }
+        Timer.log("codegen " + compilationSet.size() + " files", codegenTime.get());
+        Timer.log("write " + writer.written() + " class files", writer.ioTime());
 
+        errors.values().forEach(errorData::addAll);
+        Comptime.killIfErrors(this, "Correct build errors before compilation can complete.");
     }
 
     /**
-     * Tokenize, parse, and build environments for a file.
+     * Tokenize, parse, and build environments for a file and everything it imports.
+     * Independent files are handled concurrently, see {@link ImportScheduler}.
      *
      * @return SourceFile with exports gathered.
      */
     public SourceFile parse(String projectRoot, String relativePath, String name) throws FileNotFoundException, Comptime.CompilerError {
-
-        var source = new SourceFile(projectRoot, relativePath, name);
-        source.stmts.add(0, Stmt.Import.instance);
-
-        compilationSet.add(source);
-
-        // Get all qualified imports (but don't load them)
-        source.filter(Stmt.Import.class, (importStmt) -> {
-            String requestedImport = importStmt.stringLiteral.source();
-
-            String relative = FilenameUtils.getPath(requestedImport);
-            String n = FilenameUtils.getName(requestedImport);
-
-            String filePath = Path.of(source.projectRoot, source.relativePath, relative, n + ".imp").toString();
-            filePath = FilenameUtils.separatorsToUnix(filePath);
-
-            var f = new File(filePath);
-            if (f.exists()) {
-                SourceFile next = null;
-                try {
-                    next = parse(projectRoot, Path.of(source.relativePath, relative).toString(), n);
-                } catch (FileNotFoundException | Comptime.CompilerError e) {
-                    e.printStackTrace();
-                }
-                source.addImport(f, next);
-            }
-            return null;
-        });
-
-        // EnvironmentVisitor builds scopes and assigns
-        // UnknownType or Literal types to expressions.
-        EnvironmentVisitor environmentVisitor = new EnvironmentVisitor(this, source.rootEnvironment, source);
-        source.acceptVisitor(environmentVisitor);
-        Comptime.killIfErrors(this, "Correct syntax errors before type checking can continue.");
-
-        // Process all exports in the current file
-        source.filter(Stmt.Export.class, (exportStmt) -> {
-            if (exportStmt.stmt instanceof Stmt.Exportable exportable) {
-                String identifier = exportable.identifier();
-                ImpType type = source.rootEnvironment.getVariable(identifier);
-                if (type != null) {
-                    source.exports.put(identifier, type);
-                    ExportTable.add(source, identifier, type);
-                    ExportTable.addSQL(source.file, identifier, type);
-                    // Must figure out what data to store in the table.
-                    // Is it as simple as a list of fields and their types?
-                }
-            }
-            return null;
-        });
-
-        // Feature: need to typecheck all files
-
-        return source;
+        return new ImportScheduler(this).run(projectRoot, relativePath, name);
     }
 
 
@@ -4,14 +4,15 @@ import org.apache.commons.collections4.map.MultiKeyMap;
 import org.apache.commons.io.FilenameUtils;
 import org.imp.jvm.domain.SourceFile;
 import org.imp.jvm.types.ImpType;
+import org.imp.jvm.types.TypeSignature;
+import org.sqlite.SQLiteConfig;
 
 import java.io.*;
 import java.nio.file.Path;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ExportTable {
 
@@ -20,27 +21,46 @@ public class ExportTable {
     public static Connection connection;
     static PreparedStatement psAddExport;
     static PreparedStatement psGetExportFromSource;
+    static PreparedStatement psRemoveExportsFromSource;
+
+    // unix source path -> records, both loaded from the database and staged by this build
+    private static final Map<String, List<Row>> rows = new ConcurrentHashMap<>();
+    // sources whose records must be replaced on flush
+    private static final Set<String> staged = ConcurrentHashMap.newKeySet();
 
     public static void initDB(Path path) {
-        try {
-            var mkdirsResult = new File(path.toString()).getParentFile().mkdirs();
-//            if (!mkdirsResult) Util.exit("mkdirs command failed due to unknown issue", Constants.EIO);
-            connection = DriverManager.getConnection("jdbc:sqlite:" + path);
-            Statement statement = ExportTable.connection.createStatement();
-            statement.executeUpdate("drop table if exists ExportTable");
+        initDB(path, true);
+    }
+
+    /**
+     * Create the project tables. A database written with a different
+     * {@link TypeSignature#VERSION} is always recreated, since its blobs cannot be read.
+     *
+     * @param clean drop existing exports and build cache entries, forcing a full rebuild
+     */
+    public static void initDB(Path path, boolean clean) {
+        var mkdirsResult = new File(path.toString()).getParentFile().mkdirs();
+//        if (!mkdirsResult) Util.exit("mkdirs command failed due to unknown issue", Constants.EIO);
+        // Only used here, builds go through the connection opened by connectDB
+        try (var connection = DriverManager.getConnection("jdbc:sqlite:" + path)) {
+            Statement statement = connection.createStatement();
+            ResultSet version = statement.executeQuery("pragma user_version");
+            if (version.next() && version.getInt(1) != TypeSignature.VERSION) clean = true;
+            if (clean) statement.executeUpdate("drop table if exists ExportTable");
             statement.executeUpdate("""
-                    create table ExportTable
+                    create table if not exists ExportTable
                     (
                         qualifiedName string primary key not null,
                         name string not null,
                         source string not null,
                         kind string not null,
-                        -- serialized
+                        -- TypeSignature encoding
                         objectName string,
                         object blob
                     );
                     """);
-
+            BuildCache.createTable(statement, clean);
+            statement.executeUpdate("pragma user_version = " + TypeSignature.VERSION);
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -49,13 +69,19 @@ public class ExportTable {
 
     /**
      * Connect to the project database and check that the proper tables exist.
-     * Also, set up PreparedStatements.
+     * Also, set up PreparedStatements. The database runs in WAL mode with relaxed
+     * syncing, since it only holds data that a full rebuild can regenerate.
      *
      * @param path pointing to imp.db
      */
     public static void connectDB(Path path) {
         try {
-            connection = DriverManager.getConnection("jdbc:sqlite:" + path.toString());
+            var config = new SQLiteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + path, config.toProperties());
+            rows.clear();
+            staged.clear();
 
             DatabaseMetaData meta = connection.getMetaData();
             ResultSet resultSet = meta.getTables(null, null, "ExportTable", new String[]{"TABLE"});
@@ -69,83 +95,162 @@ public class ExportTable {
                     values (?,?,?,?,?,?)
                     """);
             psGetExportFromSource = connection.prepareStatement("select * from ExportTable where source=?");
+            psRemoveExportsFromSource = connection.prepareStatement("delete from ExportTable where source=?");
+            BuildCache.prepare(connection);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close the project database. Records stay in memory again and the build
+     * cache is disabled until the next {@link #connectDB(Path)}.
+     */
+    public static synchronized void disconnectDB() {
+        try {
+            if (connection != null) connection.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        connection = null;
+        psAddExport = null;
+        psGetExportFromSource = null;
+        psRemoveExportsFromSource = null;
+        rows.clear();
+        staged.clear();
+        BuildCache.disable();
     }
 
     /**
-     * Add a new record to the ExportTable.
+     * Stage a new record for the ExportTable. It is visible to
+     * {@link #getExportsFromSource(Path)} immediately and written by {@link #flush()}.
+     * Call {@link #removeSQL(File)} for the file first.
      *
      * @param file absolute path to file the type is defined in
      * @param name type name
      */
     public static void addSQL(File file, String name, ImpType type) {
-        try {
-            String filepath = FilenameUtils.separatorsToUnix(file.getPath());
-            String qualifiedName = filepath + ":" + name;
-
-            psAddExport.setString(1, qualifiedName);
-            psAddExport.setString(2, name);
-            psAddExport.setString(3, filepath);
-            psAddExport.setString(4, type.kind());
-
-            psAddExport.setString(5, type.getClass().getName());
+        String filepath = FilenameUtils.separatorsToUnix(file.getPath());
+        String qualifiedName = filepath + ":" + name;
+        var row = new Row(qualifiedName, name, filepath, type.kind(), type.getClass().getName(), TypeSignature.encode(type));
+        rows.computeIfAbsent(filepath, k -> new CopyOnWriteArrayList<>()).add(row);
+    }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(type);
-            byte[] employeeAsBytes = baos.toByteArray();
+    /**
+     * Drop all records of a file, before its exports are registered again.
+     * The stored records are deleted by the next {@link #flush()}.
+     *
+     * @param file absolute path to file the types are defined in
+     */
+    public static void removeSQL(File file) {
+        String filepath = FilenameUtils.separatorsToUnix(file.getPath());
+        rows.put(filepath, new CopyOnWriteArrayList<>());
+        staged.add(filepath);
+    }
 
-            psAddExport.setBytes(6, employeeAsBytes);
-            psAddExport.executeUpdate();
-        } catch (SQLException | IOException e) {
+    /**
+     * Write every staged file's records in a single transaction. Without a database
+     * connection the records stay in memory.
+     */
+    public static synchronized void flush() {
+        if (psAddExport == null || staged.isEmpty()) return;
+        try {
+            connection.setAutoCommit(false);
+            for (var source : staged) {
+                psRemoveExportsFromSource.setString(1, source);
+                psRemoveExportsFromSource.addBatch();
+                for (var row : rows.get(source)) {
+                    psAddExport.setString(1, row.qualifiedName());
+                    psAddExport.setString(2, row.name());
+                    psAddExport.setString(3, row.source());
+                    psAddExport.setString(4, row.kind());
+                    psAddExport.setString(5, row.objectName());
+                    psAddExport.setBytes(6, row.object());
+                    psAddExport.addBatch();
+                }
+            }
+            psRemoveExportsFromSource.executeBatch();
+            psAddExport.executeBatch();
+            connection.commit();
+            staged.clear();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
             e.printStackTrace();
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
         }
     }
 
     /**
-     * Get all exports from a certain source.
+     * Get all exports from a certain source. Each source is read from the database
+     * at most once per connection, so concurrent importers only contend on the first
+     * lookup. Every call decodes fresh type objects, which importers are free to rename.
      */
     public static List<ExportResult> getExportsFromSource(Path path) {
         String sourcePath = FilenameUtils.separatorsToUnix(path.toString());
+        try {
+            List<ExportResult> types = new ArrayList<>();
+            for (var row : rows.computeIfAbsent(sourcePath, ExportTable::query)) {
+                types.add(new ExportResult(
+                        row.qualifiedName(),
+                        row.name(),
+                        row.source(),
+                        row.kind(),
+                        row.objectName(),
+                        TypeSignature.decode(row.object())
+                ));
+            }
+            return types;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return Collections.emptyList();
+    }
+
+    private static synchronized List<Row> query(String sourcePath) {
+        var result = new CopyOnWriteArrayList<Row>();
+        if (psGetExportFromSource == null) return result;
         try {
             psGetExportFromSource.setString(1, sourcePath);
             ResultSet rs = psGetExportFromSource.executeQuery();
-
-            List<ExportResult> types = new ArrayList<>();
             while (rs.next()) {
-                ByteArrayInputStream bais = new ByteArrayInputStream(rs.getBytes(6));
-                ObjectInputStream ois = new ObjectInputStream(bais);
-                ImpType o = (ImpType) ois.readObject();
-
-                types.add(new ExportResult(
+                result.add(new Row(
                         rs.getString(1),
                         rs.getString(2),
                         rs.getString(3),
                         rs.getString(4),
                         rs.getString(5),
-                        o
+                        rs.getBytes(6)
                 ));
             }
-            return types;
-        } catch (SQLException | IOException | ClassNotFoundException e) {
+        } catch (SQLException e) {
             e.printStackTrace();
         }
-        return Collections.emptyList();
+        return result;
     }
 
-    public static void add(SourceFile source, String name, ImpType type) {
+    public static synchronized void add(SourceFile source, String name, ImpType type) {
         String path = FilenameUtils.removeExtension(source.file.getPath());
         path = FilenameUtils.separatorsToUnix(path);
         table.put(path, name, type);
     }
 
-    public static Optional<ImpType> get(String source, String name) {
+    public static synchronized Optional<ImpType> get(String source, String name) {
         String path = FilenameUtils.separatorsToUnix(source);
         return Optional.ofNullable(table.get(path, name));
     }
 
+    private record Row(String qualifiedName, String name, String source, String kind, String objectName,
+                       byte[] object) {
+    }
+
     public record ExportResult(String qualifiedName, String name, String source, String kind, String objectName
             , Object o) {
 
@@ -0,0 +1,42 @@
+package org.imp.jvm.tool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Defines the classes of one compiled program. Classes generated in this build are
+ * defined straight from their bytes; classes of files the {@link BuildCache} skipped
+ * are read from the `.compile` directory. Everything else, including the Imp
+ * runtime, comes from the compiler's own class loader.
+ */
+public class GeneratedClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+    private final Path classDirectory;
+
+    /**
+     * @param classes        binary class name -> class file bytes
+     * @param classDirectory `.compile` directory of the project
+     */
+    public GeneratedClassLoader(Map<String, byte[]> classes, Path classDirectory) {
+        super("imp-program", GeneratedClassLoader.class.getClassLoader());
+        this.classes = classes;
+        this.classDirectory = classDirectory;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        var bytes = classes.get(name);
+        if (bytes == null) {
+            var classFile = classDirectory.resolve(name.replace('.', '/') + ".class");
+            if (!Files.exists(classFile)) throw new ClassNotFoundException(name);
+            try {
+                bytes = Files.readAllBytes(classFile);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
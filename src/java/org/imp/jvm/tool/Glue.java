@@ -4,14 +4,18 @@ import org.imp.jvm.types.BuiltInType;
 import org.imp.jvm.types.ExternalType;
 import org.imp.jvm.types.FuncType;
 import org.imp.jvm.types.ImpType;
+import org.imp.jvm.types.ListType;
 import org.imp.runtime.Batteries;
 import org.imp.runtime.MathLib;
 import org.javatuples.Pair;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Expose standard library methods to Imp programs
@@ -25,49 +29,92 @@ public class Glue {
         coreModules.put("math", MathLib.class);
     }
 
+    // owner/name/list class -> unboxed overload
+    private static final Map<String, Optional<FuncType>> specializations = new ConcurrentHashMap<>();
+
     public static List<FuncType> getExports(String module) {
         var result = new ArrayList<FuncType>();
         if (coreModules.containsKey(module)) {
             var c = coreModules.get(module);
             var m = c.getMethods();
             for (var method : m) {
-                String name = method.getName();
                 if (method.getDeclaringClass().equals(Object.class)) {
                     continue;
                 }
-                var parameters = new ArrayList<Pair<String, ImpType>>();
-                for (var p : method.getParameterTypes()) {
-
-                    ImpType t = switch (p.getName()) {
-                        case "int" -> BuiltInType.INT;
-                        case "float" -> BuiltInType.FLOAT;
-                        case "boolean" -> BuiltInType.BOOLEAN;
-                        default -> new ExternalType(p);
-                    };
-
-                    var id = Pair.with("_", t);
-                    parameters.add(id);
-                }
-                boolean isPrefixed = false;
-                if (name.startsWith("_")) {
-                    name = name.substring(1);
-                    isPrefixed = true;
+                // Unboxed list overloads are only reachable through specialize()
+                var parameterTypes = method.getParameterTypes();
+                if (parameterTypes.length > 0 && ListType.isPrimitiveList(parameterTypes[0])) {
+                    continue;
                 }
-                var funcType = new FuncType(name, parameters);
-                funcType.isPrefixed = isPrefixed;
-                funcType.returnType = new ExternalType(method.getReturnType());
+                result.add(toFuncType(c, method));
+            }
 
-                var bt = BuiltInType.getFromString(method.getReturnType().getName());
-                if (bt != null) funcType.returnType = bt;
+        }
+        return result;
+    }
 
-                funcType.glue = true;
-                funcType.owner = c.getName().replace('.', '/');
-                result.add(funcType);
+    /**
+     * Pick the unboxed overload of a standard library function when its first
+     * argument is a list of a builtin type, e.g. `push(IntList, int)` for an `int[]`.
+     *
+     * @param argTypes resolved argument types, entries may be null
+     * @return the overload, or callType itself if there is none
+     */
+    public static FuncType specialize(FuncType callType, List<ImpType> argTypes) {
+        if (!callType.glue || argTypes.isEmpty() || !(argTypes.get(0) instanceof ListType lt)) return callType;
+        var listClass = lt.primitiveList();
+        if (listClass.isEmpty()) return callType;
 
+        String name = callType.isPrefixed ? "_" + callType.name : callType.name;
+        String key = callType.owner + "/" + name + "/" + listClass.get().getName();
+        return specializations.computeIfAbsent(key, k -> {
+            try {
+                var owner = Class.forName(callType.owner.replace('/', '.'));
+                for (var method : owner.getMethods()) {
+                    var parameterTypes = method.getParameterTypes();
+                    if (method.getName().equals(name) && parameterTypes.length == argTypes.size()
+                            && parameterTypes[0] == listClass.get()) {
+                        return Optional.of(toFuncType(owner, method));
+                    }
+                }
+            } catch (ClassNotFoundException ignored) {
             }
+            return Optional.empty();
+        }).orElse(callType);
+    }
+
+    private static FuncType toFuncType(Class<?> c, Method method) {
+        String name = method.getName();
+        var parameters = new ArrayList<Pair<String, ImpType>>();
+        for (var p : method.getParameterTypes()) {
 
+            ImpType t = switch (p.getName()) {
+                case "int" -> BuiltInType.INT;
+                case "float" -> BuiltInType.FLOAT;
+                case "double" -> BuiltInType.DOUBLE;
+                case "boolean" -> BuiltInType.BOOLEAN;
+                default -> new ExternalType(p);
+            };
+
+            var id = Pair.with("_", t);
+            parameters.add(id);
         }
-        return result;
+        boolean isPrefixed = false;
+        if (name.startsWith("_")) {
+            name = name.substring(1);
+            isPrefixed = true;
+        }
+        var funcType = new FuncType(name, parameters);
+        funcType.isPrefixed = isPrefixed;
+        funcType.returnType = new ExternalType(method.getReturnType());
+
+        var bt = BuiltInType.getFromString(method.getReturnType().getName());
+        if (method.getReturnType() == boolean.class) bt = BuiltInType.BOOLEAN;
+        if (bt != null) funcType.returnType = bt;
+
+        funcType.glue = true;
+        funcType.owner = c.getName().replace('.', '/');
+        return funcType;
     }
 
 
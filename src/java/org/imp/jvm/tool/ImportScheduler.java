@@ -0,0 +1,312 @@
+package org.imp.jvm.tool;
+
+import org.apache.commons.io.FilenameUtils;
+import org.imp.jvm.Util;
+import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.errors.Comptime;
+import org.imp.jvm.parser.Stmt;
+import org.imp.jvm.parser.tokenizer.Location;
+import org.imp.jvm.parser.tokenizer.Token;
+import org.imp.jvm.parser.tokenizer.TokenType;
+import org.imp.jvm.types.ImpType;
+import org.imp.jvm.visitors.EnvironmentVisitor;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Front-end scheduler for a compilation. Every file reachable through imports is
+ * tokenized and parsed at most once, concurrently, and not at all when the
+ * {@link BuildCache} shows its previous build is still valid. The import DAG is
+ * then walked so that each file's EnvironmentVisitor runs as soon as the files it
+ * imports have registered their exports. Comptime errors are collected per file and reported
+ * in source order, so output does not depend on thread timing.
+ */
+public class ImportScheduler {
+    private final Compiler compiler;
+    private final Executor executor;
+
+    // unix path without extension -> file
+    private final Map<String, SourceFile> files = new ConcurrentHashMap<>();
+    // importer -> resolved imports, in source order
+    private final Map<SourceFile, List<ResolvedImport>> dependencies = new ConcurrentHashMap<>();
+    private final Map<SourceFile, BuildCache.Entry> cacheEntries = new ConcurrentHashMap<>();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private final Phaser pending = new Phaser(1);
+
+    public ImportScheduler(Compiler compiler) {
+        this(compiler, ForkJoinPool.commonPool());
+    }
+
+    public ImportScheduler(Compiler compiler, Executor executor) {
+        this.compiler = compiler;
+        this.executor = executor;
+    }
+
+    private static String key(File file) {
+        return FilenameUtils.removeExtension(FilenameUtils.separatorsToUnix(file.getPath()));
+    }
+
+    private static RuntimeException unwrap(Throwable e) throws Comptime.CompilerError, FileNotFoundException {
+        var cause = e instanceof CompletionException ? e.getCause() : e;
+        if (cause instanceof Comptime.CompilerError ce) throw ce;
+        if (cause instanceof FileNotFoundException fnf) throw fnf;
+        if (cause instanceof RuntimeException re) return re;
+        return new CompletionException(cause);
+    }
+
+    private static SourceFile unparsed(String projectRoot, String relativePath, String name) {
+        try {
+            return new SourceFile(projectRoot, relativePath, name, false);
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("SourceFile should not read the file before parse()", e);
+        }
+    }
+
+    /**
+     * Parse the entry file and everything it imports, then build environments and
+     * register exports for all of them. Files whose previous build is still valid
+     * according to the {@link BuildCache} are neither parsed nor visited.
+     *
+     * @return entry SourceFile with exports gathered.
+     */
+    public SourceFile run(String projectRoot, String relativePath, String name) throws FileNotFoundException, Comptime.CompilerError {
+        var entry = unparsed(projectRoot, relativePath, name);
+        files.put(key(entry.file), entry);
+        pending.register();
+        executor.execute(() -> load(entry));
+
+        // Wait for every reachable file to be parsed
+        pending.arriveAndAwaitAdvance();
+        if (!failures.isEmpty()) throw unwrap(failures.peek());
+        var order = buildOrder(entry);
+        long cached = order.stream().filter(f -> f.cached).count();
+        Timer.log("parse " + (order.size() - cached) + " files, " + cached + " unchanged");
+
+        compiler.compilationSet().addAll(order);
+        visitEnvironments(order);
+        Timer.log("build environments");
+
+        return entry;
+    }
+
+    /**
+     * Reuse the previous build of a file if its content is unchanged, otherwise
+     * parse it. Either way, schedule everything it imports.
+     */
+    private void load(SourceFile source) {
+        try {
+            var entry = BuildCache.lookup(source);
+            if (entry.isPresent() && loadCached(source, entry.get())) return;
+
+            source.parse();
+            resolveImports(source);
+        } catch (Throwable e) {
+            failures.add(e);
+        } finally {
+            pending.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Take the import list from the cache entry instead of parsing.
+     *
+     * @return false if an import no longer exists and the file must be parsed.
+     */
+    private boolean loadCached(SourceFile source, BuildCache.Entry entry) {
+        var importFiles = new ArrayList<File>();
+        for (var d : entry.imports()) {
+            var f = new File(FilenameUtils.separatorsToUnix(Path.of(source.projectRoot, d.relativePath(), d.name() + ".imp").toString()));
+            if (!f.exists()) return false;
+            importFiles.add(f);
+        }
+
+        source.cached = true;
+        cacheEntries.put(source, entry);
+        var resolved = new ArrayList<ResolvedImport>();
+        Util.zip(entry.imports(), importFiles, (d, f) -> {
+            var token = new Token(TokenType.STRING, 1, 1, d.name());
+            var importStmt = new Stmt.Import(new Location(1, 1), token, Optional.empty());
+            resolved.add(new ResolvedImport(importStmt, f, schedule(source.projectRoot, d.relativePath(), d.name(), f)));
+        });
+        dependencies.put(source, resolved);
+        return true;
+    }
+
+    /**
+     * Get all qualified imports and schedule any not yet seen for loading.
+     */
+    private void resolveImports(SourceFile source) {
+        source.stmts.add(0, Stmt.Import.instance);
+
+        var resolved = new ArrayList<ResolvedImport>();
+        source.filter(Stmt.Import.class, (importStmt) -> {
+            String requestedImport = importStmt.stringLiteral.source();
+
+            String relative = FilenameUtils.getPath(requestedImport);
+            String n = FilenameUtils.getName(requestedImport);
+
+            String filePath = Path.of(source.projectRoot, source.relativePath, relative, n + ".imp").toString();
+            filePath = FilenameUtils.separatorsToUnix(filePath);
+
+            var f = new File(filePath);
+            if (f.exists()) {
+                String importRelativePath = Path.of(source.relativePath, relative).toString();
+                resolved.add(new ResolvedImport(importStmt, f, schedule(source.projectRoot, importRelativePath, n, f)));
+            }
+            return null;
+        });
+        dependencies.put(source, resolved);
+    }
+
+    private SourceFile schedule(String projectRoot, String relativePath, String name, File file) {
+        var next = unparsed(projectRoot, relativePath, name);
+        var existing = files.putIfAbsent(key(file), next);
+        if (existing != null) return existing;
+
+        pending.register();
+        executor.execute(() -> load(next));
+        return next;
+    }
+
+    /**
+     * Build the import DAG and return files in the order the serial compiler visited
+     * them: imports depth-first in source order, each file after its own imports.
+     */
+    private List<SourceFile> buildOrder(SourceFile entry) {
+        var graph = new DirectedAcyclicGraph<SourceFile, DefaultEdge>(DefaultEdge.class);
+        var order = new ArrayList<SourceFile>();
+        var visited = new HashSet<SourceFile>();
+        var stack = new ArrayDeque<Map.Entry<SourceFile, Iterator<ResolvedImport>>>();
+
+        graph.addVertex(entry);
+        visited.add(entry);
+        stack.push(Map.entry(entry, dependencies.get(entry).iterator()));
+        while (!stack.isEmpty()) {
+            var top = stack.peek();
+            var source = top.getKey();
+            if (!top.getValue().hasNext()) {
+                stack.pop();
+                order.add(source);
+                continue;
+            }
+            var resolvedImport = top.getValue().next();
+            var next = resolvedImport.dependency();
+            source.addImport(resolvedImport.file(), next);
+
+            graph.addVertex(next);
+            try {
+                graph.addEdge(next, source);
+            } catch (IllegalArgumentException e) {
+                Comptime.CircularImport.submit(compiler, source.file, resolvedImport.stmt(), resolvedImport.stmt().stringLiteral.source());
+                continue;
+            }
+            if (visited.add(next)) {
+                stack.push(Map.entry(next, dependencies.get(next).iterator()));
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Run EnvironmentVisitor on each file once everything it imports is done. A file
+     * is skipped when one of its imports reported errors, matching the serial compiler
+     * which stopped at the first broken module.
+     */
+    private void visitEnvironments(List<SourceFile> order) throws Comptime.CompilerError, FileNotFoundException {
+        Comptime.killIfErrors(compiler, "Correct import errors before continuing.");
+
+        var done = new HashMap<SourceFile, CompletableFuture<Boolean>>();
+        var errors = new HashMap<SourceFile, List<Comptime.Data>>();
+        for (var source : order) {
+            var fileErrors = new ArrayList<Comptime.Data>();
+            errors.put(source, fileErrors);
+
+            var imports = dependencies.get(source).stream()
+                    .map(r -> done.get(r.dependency()))
+                    .toArray(CompletableFuture<?>[]::new);
+            var future = CompletableFuture.allOf(imports).thenApplyAsync(v -> {
+                for (var i : imports) {
+                    if (!((Boolean) i.join())) return false;
+                }
+                if (source.cached) {
+                    if (upToDate(source)) return true;
+                    // An import's exports changed, so this file must be rebuilt after all
+                    source.cached = false;
+                    try {
+                        source.parse();
+                    } catch (FileNotFoundException e) {
+                        throw new CompletionException(e);
+                    }
+                    source.stmts.add(0, Stmt.Import.instance);
+                }
+                visitEnvironment(source, fileErrors);
+                return fileErrors.isEmpty();
+            }, executor);
+            done.put(source, future);
+        }
+
+        try {
+            CompletableFuture.allOf(done.values().toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+
+        for (var source : order) {
+            compiler.errorData().addAll(errors.get(source));
+        }
+        Comptime.killIfErrors(compiler, "Correct syntax errors before type checking can continue.");
+    }
+
+    private void visitEnvironment(SourceFile source, List<Comptime.Data> fileErrors) {
+        var fileCompiler = new Compiler(fileErrors, compiler.compilationSet(), compiler.developmentMode(), compiler.classes());
+
+        // EnvironmentVisitor builds scopes and assigns
+        // UnknownType or Literal types to expressions.
+        EnvironmentVisitor environmentVisitor = new EnvironmentVisitor(fileCompiler, source.rootEnvironment, source);
+        source.acceptVisitor(environmentVisitor);
+        if (!fileErrors.isEmpty()) return;
+        environmentVisitor.inference.solve();
+
+        // Process all exports in the current file
+        ExportTable.removeSQL(source.file);
+        source.filter(Stmt.Export.class, (exportStmt) -> {
+            if (exportStmt.stmt instanceof Stmt.Exportable exportable) {
+                String identifier = exportable.identifier();
+                ImpType type = source.rootEnvironment.getVariable(identifier);
+                if (type != null) {
+                    source.exports.put(identifier, type);
+                    ExportTable.add(source, identifier, type);
+                    ExportTable.addSQL(source.file, identifier, type);
+                }
+            }
+            return null;
+        });
+        if (BuildCache.enabled()) source.exportHash = BuildCache.exportHash(source);
+    }
+
+    /**
+     * A cached file is up to date when every import still exports the same signatures
+     * it was compiled against. Imports are always finished before this is called.
+     */
+    private boolean upToDate(SourceFile source) {
+        var entry = cacheEntries.get(source);
+        var imports = dependencies.get(source);
+        if (imports.size() != entry.imports().size()) return false;
+        for (int i = 0; i < imports.size(); i++) {
+            if (!Objects.equals(imports.get(i).dependency().exportHash, entry.imports().get(i).exportHash())) {
+                return false;
+            }
+        }
+        source.exportHash = entry.exportHash();
+        return true;
+    }
+
+    private record ResolvedImport(Stmt.Import stmt, File file, SourceFile dependency) {
+    }
+}
@@ -0,0 +1,67 @@
+package org.imp.jvm.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs a compiled Imp program inside the current JVM, saving the JVM startup and
+ * runtime class loading a `java` subprocess pays on every run. Each run gets its own
+ * {@link GeneratedClassLoader}, so program statics start fresh.
+ */
+public class ProgramRunner {
+
+    /**
+     * Invoke `main` of the given class, with the current stdout and stderr.
+     *
+     * @return exit status a `java` process would have reported
+     */
+    public static int run(ClassLoader loader, String className) {
+        var thread = Thread.currentThread();
+        var previousLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            var main = Class.forName(className, true, loader).getMethod("main", String[].class);
+            main.invoke(null, (Object) new String[0]);
+            return 0;
+        } catch (InvocationTargetException e) {
+            System.err.print("Exception in thread \"main\" ");
+            e.getCause().printStackTrace();
+        } catch (ExceptionInInitializerError e) {
+            System.err.print("Exception in thread \"main\" ");
+            e.printStackTrace();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("Error: could not run " + className + ": " + e);
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+        }
+        return 1;
+    }
+
+    /**
+     * Invoke `main` of the given class and collect everything it prints. System.out
+     * and System.err are swapped for the duration of the run, so captured runs are
+     * serialized.
+     */
+    public static synchronized Result capture(ClassLoader loader, String className) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var previousOut = System.out;
+        var previousErr = System.err;
+        int status;
+        try (var outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+             var errStream = new PrintStream(err, true, StandardCharsets.UTF_8)) {
+            System.setOut(outStream);
+            System.setErr(errStream);
+            status = run(loader, className);
+        } finally {
+            System.setOut(previousOut);
+            System.setErr(previousErr);
+        }
+        return new Result(status, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+    }
+
+    public record Result(int status, String stdout, String stderr) {
+    }
+}
@@ -13,7 +13,7 @@ import static com.diogonunes.jcolor.Attribute.TEXT_COLOR;
  */
 public class Timer {
 
-	private static final long startTime = System.nanoTime();
+	private static long startTime = System.nanoTime();
 	private static final String TIME_SYMBOL = "◔ ";
 	/**
 	 * Change Timer.Log to `true` to enable messages
@@ -21,6 +21,14 @@ public class Timer {
 	public static boolean LOG = false;
 	private static long time = startTime;
 
+	/**
+	 * Start timing a new compilation in a long-lived process, such as the build server.
+	 */
+	public static void reset() {
+		startTime = System.nanoTime();
+		time = startTime;
+	}
+
 	public static void log(String message) {
 		if (LOG) {
 			long current = System.nanoTime();
@@ -34,6 +42,19 @@ public class Timer {
 		}
 	}
 
+	/**
+	 * Log a duration measured elsewhere, such as time summed across worker threads.
+	 * Does not reset the running delta used by {@link #log(String)}.
+	 */
+	public static void log(String message, long nanos) {
+		if (LOG) {
+			float runtime = ((float) nanos) / 1000000;
+			String formattedRuntime = String.format("%.2fms", runtime);
+			formattedRuntime = StringUtils.rightPad(formattedRuntime, 10);
+			Util.println(colorize(TIME_SYMBOL + formattedRuntime + message, TEXT_COLOR(104)));
+		}
+	}
+
 	@SuppressWarnings("UnusedReturnValue")
 	public static float logTotalTime() {
 		if (LOG) {
@@ -0,0 +1,70 @@
+package org.imp.jvm.tool.cli;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Sends an `imp` invocation to the project's {@link BuildServer} and replays its
+ * output. Only depends on java.base, so it starts much faster than the compiler.
+ * Exits with {@link #UNAVAILABLE} when no server answers or the server cannot handle
+ * the arguments, and the launcher script then runs the compiler directly.
+ */
+public class BuildClient {
+	// EX_TEMPFAIL from sysexits.h
+	static final int UNAVAILABLE = 75;
+
+	static final int EXIT = 0;
+	static final int STDOUT = 1;
+	static final int STDERR = 2;
+
+	static Path socketPath(String projectRoot) {
+		return Path.of(projectRoot, ".compile", "imp.sock");
+	}
+
+	public static void main(String[] args) {
+		try {
+			System.exit(send(Path.of(System.getProperty("user.dir")), args, System.out, System.err));
+		} catch (IOException e) {
+			System.exit(UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Run `args` on the build server of `projectRoot` and replay its output to `out` and `err`.
+	 *
+	 * @return exit status of the build
+	 * @throws IOException if no server answered
+	 */
+	public static int send(Path projectRoot, String[] args, PrintStream out, PrintStream err) throws IOException {
+		var address = UnixDomainSocketAddress.of(socketPath(projectRoot.toString()));
+		boolean received = false;
+		try (var channel = SocketChannel.open(address)) {
+			var request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			request.writeInt(args.length);
+			for (var arg : args) request.writeUTF(arg);
+			request.flush();
+
+			var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			while (true) {
+				int frame = in.readByte();
+				received = true;
+				if (frame == EXIT) {
+					out.flush();
+					err.flush();
+					return in.readInt();
+				}
+				var bytes = in.readNBytes(in.readInt());
+				var target = frame == STDERR ? err : out;
+				target.write(bytes);
+				target.flush();
+			}
+		} catch (IOException e) {
+			if (!received) throw e;
+			err.println("Lost connection to the build server: " + e.getMessage());
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.imp.jvm.tool.cli;
+
+import org.imp.jvm.Util;
+import org.imp.jvm.errors.FatalError;
+import org.imp.jvm.tool.Timer;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Long-lived compiler for one project, listening on `.compile/imp.sock`. Keeping the
+ * JVM alive between builds keeps the compiler JIT-compiled, Glue's reflection
+ * results loaded and the project database open.
+ * <p>
+ * Requests are handled one at a time: System.out and System.err are redirected to
+ * the connected {@link BuildClient} for the duration of a build. Util.exit throws a
+ * FatalError instead of exiting, so a fatal compiler error ends that build instead
+ * of the server.
+ */
+public class BuildServer {
+	private final Path socket;
+	private final PrintStream stdout = System.out;
+	private final PrintStream stderr = System.err;
+
+	public BuildServer(String projectRoot) {
+		this.socket = BuildClient.socketPath(projectRoot);
+	}
+
+	public void serve() throws IOException {
+		if (Files.exists(socket)) {
+			boolean running;
+			try {
+				SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+				running = true;
+			} catch (IOException e) {
+				running = false;
+			}
+			if (running) throw new IOException("A build server is already running for this project.");
+			// Nothing is listening, so the socket file is left over from a killed server
+			Files.delete(socket);
+		}
+		Files.createDirectories(socket.getParent());
+		Util.EXITS = false;
+
+		try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> socket.toFile().delete()));
+			stdout.println("Build server listening on " + socket);
+
+			while (true) {
+				try (var client = server.accept()) {
+					handle(client);
+				} catch (IOException e) {
+					e.printStackTrace(stderr);
+				}
+			}
+		}
+	}
+
+	private void handle(SocketChannel client) throws IOException {
+		var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+		var args = new String[in.readInt()];
+		for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+
+		var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+		var clientOut = new PrintStream(new FrameStream(out, BuildClient.STDOUT), true, StandardCharsets.UTF_8);
+		var clientErr = new PrintStream(new FrameStream(out, BuildClient.STDERR), true, StandardCharsets.UTF_8);
+		int status;
+		System.setOut(clientOut);
+		System.setErr(clientErr);
+		try {
+			status = build(args);
+		} finally {
+			clientOut.flush();
+			clientErr.flush();
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+
+		out.writeByte(BuildClient.EXIT);
+		out.writeInt(status);
+		out.flush();
+	}
+
+	/**
+	 * Only the default compile-and-run command is served. Subcommands, help and
+	 * `--fork` are left to a regular `imp` process.
+	 */
+	private int build(String[] args) {
+		var cli = new CLI();
+		try {
+			var parsed = new CommandLine(cli).parseArgs(args);
+			if (parsed.hasSubcommand() || cli.usageHelpRequested || cli.fork) return BuildClient.UNAVAILABLE;
+		} catch (CommandLine.ParameterException e) {
+			return BuildClient.UNAVAILABLE;
+		}
+
+		Timer.reset();
+		try {
+			return cli.compileAndRun(false);
+		} catch (RuntimeException e) {
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof FatalError fatal) return fatal.status;
+			}
+			e.printStackTrace();
+			return 1;
+		}
+	}
+
+	/**
+	 * Writes each chunk as a frame tagged with the stream it was written to.
+	 */
+	private static class FrameStream extends OutputStream {
+		private final DataOutputStream out;
+		private final int stream;
+
+		FrameStream(DataOutputStream out, int stream) {
+			this.out = out;
+			this.stream = stream;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized (out) {
+				out.writeByte(stream);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+}
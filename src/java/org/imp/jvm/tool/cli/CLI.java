@@ -1,12 +1,16 @@
 package org.imp.jvm.tool.cli;
 
 import org.imp.jvm.Constants;
-import org.imp.jvm.Util;
+import org.imp.jvm.FrameComputer;
+import org.imp.jvm.PeepholeOptimizer;
 import org.imp.jvm.errors.Comptime;
 import org.imp.jvm.tool.Compiler;
 import org.imp.jvm.tool.ExportTable;
+import org.imp.jvm.tool.GeneratedClassLoader;
+import org.imp.jvm.tool.ProgramRunner;
 import org.imp.jvm.tool.Timer;
 import org.imp.jvm.tool.manifest.Manifest;
+import org.imp.jvm.visitors.OptimizerVisitor;
 import picocli.CommandLine;
 
 import java.io.FileNotFoundException;
@@ -16,6 +20,7 @@ import java.nio.file.Path;
 @CommandLine.Command(name = "imp", subcommands = {
 		NewCommand.class,
 		BuildCommand.class,
+		DaemonCommand.class,
 }, description = "Compile and run an imp program." +
 		""
 )
@@ -25,14 +30,30 @@ public class CLI implements Runnable {
 	@CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "display this help message")
 	boolean usageHelpRequested;
 
+	@SuppressWarnings("unused")
+	@CommandLine.Option(names = {"--rebuild"}, description = "ignore the build cache and recompile every file")
+	boolean rebuild;
+
+	@SuppressWarnings("unused")
+	@CommandLine.Option(names = {"--fork"}, description = "run the program in a separate JVM instead of in-process")
+	boolean fork;
+
+	@SuppressWarnings("unused")
+	@CommandLine.Option(names = {"--no-optimize"}, description = "skip constant folding and peephole optimization, use with --rebuild to recompile unchanged files")
+	boolean noOptimize;
+
+	@SuppressWarnings("unused")
+	@CommandLine.Option(names = {"--asm-frames"}, description = "let ASM compute stack map frames instead of the compiler")
+	boolean asmFrames;
+
 
 	public static void main(String[] args) {
 		new CommandLine(new CLI()).execute(args);
 	}
 
 	/**
-	 * Run the compiled JVM class, including the Imp runtime
-	 * files.
+	 * Run the compiled JVM class in a new `java` process, including the Imp runtime
+	 * files. Only used with `--fork`, see {@link ProgramRunner} for the default.
 	 *
 	 * @param className filename
 	 * @throws IOException          if process cannot be started
@@ -61,39 +82,65 @@ public class CLI implements Runnable {
 			return;
 		}
 
-		Manifest manifest = null;
+		int status = compileAndRun(true);
+		if (status != 0) System.exit(status);
+	}
+
+	/**
+	 * Compile the project in the working directory and run its entry file.
+	 *
+	 * @param connect open the project database first. The build server keeps it open between builds.
+	 * @return non-zero exit status if the project could not be compiled
+	 */
+	int compileAndRun(boolean connect) {
+		Manifest manifest;
 		try {
 			manifest = Manifest.get();
 			assert manifest != null;
 		} catch (FileNotFoundException e) {
 			System.err.println("Manifest not found. Switch directories to an imp project, or run `imp new`.");
-			System.exit(Constants.ENOENT);
+			return Constants.ENOENT;
 		}
 		String pwd = System.getProperty("user.dir");
-		ExportTable.initDB(Path.of(pwd, ".compile", "imp.db"));
+		if (connect || rebuild) {
+			// The build server is still connected from its previous build
+			ExportTable.disconnectDB();
+			ExportTable.initDB(Path.of(pwd, ".compile", "imp.db"), rebuild);
 
-		// Connect to db
-		ExportTable.connectDB(Path.of(pwd, ".compile", "imp.db"));
+			// Connect to db
+			ExportTable.connectDB(Path.of(pwd, ".compile", "imp.db"));
+		}
 
 		String moduleLocation = Path.of(pwd).toString();
 
 		var imp = new Compiler();
 		Timer.LOG = true;
-		String classPath = null;
+		OptimizerVisitor.ENABLED = !noOptimize;
+		PeepholeOptimizer.ENABLED = !noOptimize;
+		FrameComputer.ENABLED = !asmFrames;
+		String classPath;
 		try {
 			classPath = imp.compile(moduleLocation, manifest.entry());
 		} catch (FileNotFoundException e) {
 			System.err.println("Manifest.entry points to a file that does not exist.");
-			System.exit(Constants.ENOENT);
+			return Constants.ENOENT;
 		} catch (Comptime.CompilerError e) {
-			Util.exit(e.getMessage(), 1);
+			System.err.println(e.getMessage());
+			return 1;
 		}
 
-		try {
-			execute(classPath);
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
+		if (fork) {
+			try {
+				execute(classPath);
+			} catch (IOException | InterruptedException e) {
+				e.printStackTrace();
+			}
+			return 0;
 		}
+
+		var loader = new GeneratedClassLoader(imp.classes(), Path.of(pwd, ".compile"));
+		int status = ProgramRunner.run(loader, classPath);
+		if (status != 0) System.err.println("Process finished with exit code " + status);
+		return 0;
 	}
 }
-
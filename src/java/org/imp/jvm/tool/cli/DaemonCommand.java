@@ -0,0 +1,39 @@
+package org.imp.jvm.tool.cli;
+
+import org.imp.jvm.Constants;
+import org.imp.jvm.tool.ExportTable;
+import org.imp.jvm.tool.manifest.Manifest;
+import picocli.CommandLine;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+@CommandLine.Command(
+		name = "daemon",
+		description = "Keep a warm compiler running for the current project. " +
+				"`imp` runs in this directory are sent to it until it is stopped."
+)
+class DaemonCommand implements Runnable {
+
+	@Override
+	public void run() {
+		try {
+			Manifest.get();
+		} catch (FileNotFoundException e) {
+			System.err.println("Manifest not found. Switch directories to an imp project, or run `imp new`.");
+			System.exit(Constants.ENOENT);
+		}
+
+		String pwd = System.getProperty("user.dir");
+		ExportTable.initDB(Path.of(pwd, ".compile", "imp.db"), false);
+		ExportTable.connectDB(Path.of(pwd, ".compile", "imp.db"));
+
+		try {
+			new BuildServer(pwd).serve();
+		} catch (IOException e) {
+			System.err.println("Could not start the build server: " + e.getMessage());
+			System.exit(Constants.EIO);
+		}
+	}
+}
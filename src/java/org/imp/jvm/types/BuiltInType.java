@@ -1,5 +1,6 @@
 package org.imp.jvm.types;
 
+import org.imp.jvm.Util;
 import org.imp.jvm.parser.tokenizer.TokenType;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -127,8 +128,7 @@ public enum BuiltInType implements ImpType, Serializable {
             }
             case STRING -> mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/String");
             default -> {
-                System.err.println("Unboxing isn't supported for that type.");
-                System.exit(29);
+                Util.exit("Unboxing isn't supported for that type.", 29);
             }
         }
     }
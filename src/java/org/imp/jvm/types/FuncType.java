@@ -1,29 +1,33 @@
 package org.imp.jvm.types;
 
 import org.imp.jvm.Util;
+import org.imp.jvm.domain.LocalSlots;
 import org.imp.jvm.parser.Expr;
 import org.javatuples.Pair;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.commons.GeneratorAdapter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class FuncType extends StructType {
-    public final Map<String, Integer> localMap = new HashMap<>();
-    public final Map<String, Integer> argMap = new HashMap<>();
     public String name;
     public ImpType returnType = BuiltInType.VOID;
     public GeneratorAdapter ga = null;
+    public LocalSlots locals = null;
+    // Marked at the start of the method being generated, self tail calls jump here
+    public Label start = null;
     public boolean glue = false;
     public boolean hasReturn2 = false;
     public boolean isPrefixed = false;
     public String owner;
 
-    // Todo: will have to be List<List<ImpType>> to support multiple generics
-    //  We'll probably need a standard sorting order for this.
-    public List<Map<String, ImpType>> specializations = new ArrayList<>();
+    // Distinct instantiations of a generic function, by typeArgumentsKey
+    public final Map<String, Map<String, ImpType>> specializations = new LinkedHashMap<>();
 
     public Map<String, ImpType> currentSpecialization = null;
 
@@ -42,24 +46,43 @@ public class FuncType extends StructType {
 
     }
 
-    public static ImpType getSpecializedType(Map<String, ImpType> specialization, String key) {
-        return specialization.get(key);
+    /**
+     * @return `type` with every generic type in it, also inside lists and unions,
+     * replaced by its type argument
+     */
+    public static ImpType getSpecializedType(Map<String, ImpType> specialization, ImpType type) {
+        return switch (type) {
+            case GenericType gt -> specialization.get(gt.key());
+            case ListType lt -> {
+                var content = getSpecializedType(specialization, lt.contentType());
+                yield content == lt.contentType() ? lt : TypeTable.intern(new ListType(content));
+            }
+            case UnionType ut && ut.types.stream().anyMatch(t -> getSpecializedType(specialization, t) != t) -> {
+                var members = ut.types.stream().map(t -> getSpecializedType(specialization, t)).collect(Collectors.toSet());
+                yield TypeTable.intern(new UnionType(members));
+            }
+            default -> type;
+        };
     }
 
     public List<Pair<String, ImpType>> buildParametersFromSpecialization(Map<String, ImpType> specialization) {
         var p = new ArrayList<Pair<String, ImpType>>();
         for (int i = 0; i < parameters.size(); i++) {
             var pair = parameters.get(i);
-            var pt = pair.getValue1();
-            if (pt instanceof GenericType gt) {
-                p.add(pair.setAt1(specialization.get(gt.key())));
-            } else {
-                p.add(pair);
-            }
+            p.add(pair.setAt1(getSpecializedType(specialization, pair.getValue1())));
         }
         return p;
     }
 
+    /**
+     * Look up the instantiation for a call with these arguments, adding it the
+     * first time so every call site with the same type arguments shares it.
+     */
+    public Map<String, ImpType> specialize(List<Expr> arguments) {
+        var specialization = buildSpecialization(arguments);
+        return specializations.computeIfAbsent(typeArgumentsKey(specialization), k -> specialization);
+    }
+
     public Map<String, ImpType> buildSpecialization(List<Expr> arguments) {
         var argTypes = arguments.stream().map(ex -> ex.realType).toList();
         var specialization = new HashMap<String, ImpType>();
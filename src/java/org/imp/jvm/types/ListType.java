@@ -1,10 +1,34 @@
 package org.imp.jvm.types;
 
+import org.imp.runtime.BoolList;
+import org.imp.runtime.DoubleList;
+import org.imp.runtime.FloatList;
+import org.imp.runtime.IntList;
 import org.objectweb.asm.Opcodes;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 public record ListType(ImpType contentType) implements ImpType {
+	private static final Map<BuiltInType, Class<?>> primitiveLists = Map.of(
+			BuiltInType.INT, IntList.class,
+			BuiltInType.FLOAT, FloatList.class,
+			BuiltInType.DOUBLE, DoubleList.class,
+			BuiltInType.BOOLEAN, BoolList.class
+	);
+
+	public static boolean isPrimitiveList(Class<?> c) {
+		return primitiveLists.containsValue(c);
+	}
+
+	/**
+	 * @return runtime class storing this list's elements unboxed, if the content type has one.
+	 */
+	public Optional<Class<?>> primitiveList() {
+		if (contentType instanceof BuiltInType bt) return Optional.ofNullable(primitiveLists.get(bt));
+		return Optional.empty();
+	}
 
 	@Override
 	public boolean equals(Object o) {
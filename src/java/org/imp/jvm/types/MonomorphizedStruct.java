@@ -1,60 +1,38 @@
 package org.imp.jvm.types;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-public class MonomorphizedStruct implements ImpType {
+/**
+ * A generic struct with concrete type arguments. Each one is generated as its own
+ * inner class whose fields have the resolved types, e.g. `Box[int]` stores an
+ * `int`, so construction needs no boxing and field reads need no cast.
+ * Instances are shared through StructType.instantiate.
+ */
+public class MonomorphizedStruct extends StructType {
+	private static final long serialVersionUID = 1L;
+
 	public final StructType struct;
-	public final Map<String, ImpType> resolved = new HashMap<>();
+	public final Map<String, ImpType> resolved;
 
-	public MonomorphizedStruct(StructType struct) {
+	MonomorphizedStruct(StructType struct, Map<String, ImpType> resolved, String qualifiedName) {
+		super(struct.name, struct.parameters.stream()
+				.map(p -> p.getValue1() instanceof GenericType gt ? p.setAt1(resolved.get(gt.key())) : p)
+				.collect(Collectors.toList()), struct.generics.stream().filter(g -> !resolved.containsKey(g)).toList());
 		this.struct = struct;
+		this.resolved = resolved;
+		this.qualifiedName = qualifiedName;
+		this.parentName = struct.parentName;
 	}
 
 	@Override
-	public Object getDefaultValue() {
-		return struct.getDefaultValue();
-	}
-
-	@Override
-	public String getDescriptor() {
-		return struct.getDescriptor();
-	}
-
-	@Override
-	public String getInternalName() {
-		return struct.getInternalName();
-	}
-
-	@Override
-	public int getLoadVariableOpcode() {
-		return struct.getLoadVariableOpcode();
-	}
-
-	@Override
-	public String getName() {
-		return struct.getName();
-	}
-
-	@Override
-	public int getReturnOpcode() {
-		return struct.getReturnOpcode();
-	}
-
-	@Override
-	public Class<?> getTypeClass() {
-		return struct.getTypeClass();
-	}
-
-	@Override
-	public boolean isNumeric() {
-		return struct.isNumeric();
+	public boolean equals(Object obj) {
+		return obj instanceof MonomorphizedStruct o && qualifiedName.equals(o.qualifiedName);
 	}
 
 	@Override
-	public String kind() {
-		return struct.kind();
+	public int hashCode() {
+		return qualifiedName.hashCode();
 	}
 
 	@Override
@@ -4,7 +4,10 @@ import org.javatuples.Pair;
 import org.objectweb.asm.Opcodes;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class StructType implements ImpType, Serializable {
@@ -13,6 +16,8 @@ public class StructType implements ImpType, Serializable {
     public String name;
     public String qualifiedName;
     public String parentName;
+    // Instances of a generic struct, by typeArgumentsKey. Belong to this compilation, so not serialized
+    private transient Map<String, MonomorphizedStruct> instances;
 
     public StructType(String name, List<Pair<String, ImpType>> identifiers, List<String> generics) {
         this.name = name;
@@ -71,6 +76,44 @@ public class StructType implements ImpType, Serializable {
         return generics.size() > 0;
     }
 
+    /**
+     * Type arguments are told apart by their descriptors, since those decide the
+     * fields of a struct instance and the descriptor of a function instance.
+     */
+    public String typeArgumentsKey(Map<String, ImpType> typeArguments) {
+        return generics.stream().map(g -> {
+            var t = typeArguments.get(g);
+            return g + "=" + (t == null ? "?" : t.getDescriptor());
+        }).collect(Collectors.joining(","));
+    }
+
+    /**
+     * @return the instance of this generic struct for these type arguments, the
+     * same one for every use
+     */
+    public MonomorphizedStruct instantiate(Map<String, ImpType> typeArguments) {
+        if (instances == null) instances = new LinkedHashMap<>();
+        return instances.computeIfAbsent(typeArgumentsKey(typeArguments), key -> {
+            // Box[int] is the inner class `Box$int`
+            var suffix = generics.stream()
+                    .map(g -> typeArguments.containsKey(g) ? typeArguments.get(g).getName().replaceAll("\\W", "_") : "_")
+                    .collect(Collectors.joining("$"));
+            var name = qualifiedName + "$" + suffix;
+            if (instances.values().stream().anyMatch(i -> i.qualifiedName.equals(name))) {
+                // Different types with the same name
+                return new MonomorphizedStruct(this, typeArguments, name + "$" + instances.size());
+            }
+            return new MonomorphizedStruct(this, typeArguments, name);
+        });
+    }
+
+    /**
+     * @return every instance of this generic struct created so far
+     */
+    public Collection<MonomorphizedStruct> instances() {
+        return instances == null ? List.of() : instances.values();
+    }
+
     @Override
     public boolean isNumeric() {
         return false;
@@ -0,0 +1,68 @@
+package org.imp.jvm.types;
+
+import org.imp.jvm.domain.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the type names of one module. EnvironmentVisitor creates a type
+ * variable for every type written by name, together with the environment the
+ * name is written in. Once the module's declarations are all known, solve()
+ * looks each name up once: a name declared as a type binds the variable, and a
+ * name declared as another variable, like an alias of an alias, unifies the
+ * two. Type checking then reads solutions through resolve() instead of looking
+ * names up again at every use.
+ */
+public class TypeInference {
+    private record Constraint(UnknownType variable, Environment environment) {
+    }
+
+    private final List<Constraint> constraints = new ArrayList<>();
+
+    /**
+     * @return a type variable for the type called `name` in `environment`
+     */
+    public UnknownType named(String name, Environment environment) {
+        var variable = new UnknownType(name);
+        constraints.add(new Constraint(variable, environment));
+        return variable;
+    }
+
+    /**
+     * Solve every variable created so far. Names that are not declared stay
+     * unsolved and are reported where the type is used.
+     */
+    public void solve() {
+        for (var constraint : constraints) {
+            var type = constraint.environment.getVariable(constraint.variable.typeName);
+            if (type instanceof UnknownType other) {
+                constraint.variable.unify(other);
+            } else if (type != null) {
+                constraint.variable.solve(type);
+            }
+        }
+        constraints.clear();
+    }
+
+    /**
+     * @return `type` with every solved variable in it replaced by its solution.
+     * Unions are updated in place, so every holder of one sees its members resolved.
+     */
+    public static ImpType resolve(ImpType type) {
+        if (type instanceof UnknownType ukt) {
+            var solution = ukt.solution();
+            return solution == null ? type : resolve(solution);
+        }
+        if (type instanceof ListType lt) {
+            var content = resolve(lt.contentType());
+            return content == lt.contentType() ? type : TypeTable.intern(new ListType(content));
+        }
+        if (type instanceof UnionType ut && !TypeTable.isCanonical(ut)) {
+            ut.types = ut.types.stream().map(TypeInference::resolve).collect(Collectors.toSet());
+            return TypeTable.intern(ut);
+        }
+        return type;
+    }
+}
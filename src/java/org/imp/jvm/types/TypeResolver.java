@@ -3,7 +3,18 @@ package org.imp.jvm.types;
 import org.apache.commons.lang3.StringUtils;
 import org.imp.runtime.ListWrapper;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class TypeResolver {
+    // typesMatch results for pairs of canonical types, see TypeTable
+    private static final ConcurrentHashMap<TypePair, Boolean> matches = new ConcurrentHashMap<>();
+
+    private record TypePair(ImpType par, ImpType arg) {
+    }
+
+    static void resetMatches() {
+        matches.clear();
+    }
 
 
     public static Object getValueFromString(String value, BuiltInType t) {
@@ -28,6 +39,7 @@ public class TypeResolver {
     /**
      * Defines the type hierarchy for the whole language tbh.
      * Be careful with what goes on here. Rules described below.
+     * Canonical types (see TypeTable) cannot change, so their results are computed once.
      *
      * @param par the parameter type, e.g. from the function definition
      * @param arg the argument type, e.g. what is passed to the function call
@@ -42,6 +54,13 @@ public class TypeResolver {
      *            </ol>
      */
     public static boolean typesMatch(ImpType par, ImpType arg) {
+        if (TypeTable.isCanonical(par) && TypeTable.isCanonical(arg)) {
+            return matches.computeIfAbsent(new TypePair(par, arg), p -> match(par, arg));
+        }
+        return match(par, arg);
+    }
+
+    private static boolean match(ImpType par, ImpType arg) {
         // 0
         if (par instanceof UnionType uPar) {
 //			System.err.println("oops");
@@ -82,14 +101,14 @@ public class TypeResolver {
         }
         // 5
         if (arg instanceof StructType ast && par instanceof StructType pst) {
-            return ast.parameters.equals(pst.parameters) && ast.name.equals(pst.name);
+            return ast == pst || ast.name.equals(pst.name) && ast.parameters.equals(pst.parameters);
         }
 
         return false;
     }
 
     private static boolean isList(ImpType type) {
-        return type.getName().equals("java.util.List") || type instanceof ListType;
+        return type instanceof ListType || type.getName().equals("java.util.List");
     }
 
 }
@@ -0,0 +1,295 @@
+package org.imp.jvm.types;
+
+import org.javatuples.Pair;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of exported Imp types, stored in the ExportTable.
+ * <p>
+ * Layout: version byte, string table (count, then length-prefixed UTF-8 strings),
+ * then the type tree. Integers are unsigned varints and every string in the tree
+ * is an index into the string table. Structs and functions that appear more than
+ * once are written once and referenced by position afterwards, which also allows
+ * recursive types. Union members are sorted by name so equal types always encode
+ * to equal bytes.
+ * <p>
+ * Only the signature is kept: codegen state on FuncType (locals, specializations,
+ * the GeneratorAdapter) is not part of the encoding.
+ */
+public final class TypeSignature {
+    public static final int VERSION = 1;
+
+    private static final int BUILTIN = 0;
+    private static final int STRUCT = 1;
+    private static final int FUNC = 2;
+    private static final int UNION = 3;
+    private static final int LIST = 4;
+    private static final int GENERIC = 5;
+    private static final int UNKNOWN = 6;
+    private static final int EXTERNAL = 7;
+    private static final int MONOMORPHIZED = 8;
+    private static final int REFERENCE = 9;
+
+    private static final int GLUE = 1;
+    private static final int PREFIXED = 2;
+
+    private TypeSignature() {
+    }
+
+    public static byte[] encode(ImpType type) {
+        var encoder = new Encoder();
+        encoder.type(type);
+
+        var out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        writeVarint(out, encoder.strings.size());
+        for (var s : encoder.strings) {
+            var bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+        out.writeBytes(encoder.body.toByteArray());
+        return out.toByteArray();
+    }
+
+    public static ImpType decode(byte[] bytes) throws IOException {
+        var in = new ByteArrayInputStream(bytes);
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported type signature version " + version + ", expected " + VERSION + ".");
+        }
+        int count = readVarint(in);
+        var strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = readVarint(in);
+            strings[i] = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+        }
+        return new Decoder(in, strings).type();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b == -1) throw new EOFException("Truncated type signature.");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in type signature.");
+    }
+
+    private static final class Encoder {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndex = new HashMap<>();
+        final Map<StructType, Integer> written = new IdentityHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        void varint(int value) {
+            writeVarint(body, value);
+        }
+
+        // 0 is reserved for null
+        void string(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            var index = stringIndex.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+            varint(index + 1);
+        }
+
+        void strings(List<String> list) {
+            varint(list.size());
+            list.forEach(this::string);
+        }
+
+        void parameters(List<Pair<String, ImpType>> parameters) {
+            varint(parameters.size());
+            for (var p : parameters) {
+                string(p.getValue0());
+                type(p.getValue1());
+            }
+        }
+
+        void type(ImpType type) {
+            if (type instanceof StructType st && written.containsKey(st)) {
+                varint(REFERENCE);
+                varint(written.get(st));
+                return;
+            }
+            switch (type) {
+                case BuiltInType bt -> {
+                    varint(BUILTIN);
+                    varint(bt.ordinal());
+                }
+                case FuncType ft -> {
+                    written.put(ft, written.size());
+                    varint(FUNC);
+                    string(ft.name);
+                    string(ft.owner);
+                    varint((ft.glue ? GLUE : 0) | (ft.isPrefixed ? PREFIXED : 0));
+                    strings(ft.generics);
+                    parameters(ft.parameters);
+                    type(ft.returnType);
+                }
+                case MonomorphizedStruct mst -> {
+                    varint(MONOMORPHIZED);
+                    type(mst.struct);
+                    var keys = new ArrayList<>(mst.resolved.keySet());
+                    Collections.sort(keys);
+                    varint(keys.size());
+                    for (var key : keys) {
+                        string(key);
+                        type(mst.resolved.get(key));
+                    }
+                }
+                case StructType st -> {
+                    written.put(st, written.size());
+                    varint(STRUCT);
+                    string(st.name);
+                    string(st.qualifiedName);
+                    string(st.parentName);
+                    strings(st.generics);
+                    parameters(st.parameters);
+                }
+                case UnionType ut -> {
+                    varint(UNION);
+                    var members = new ArrayList<>(ut.types);
+                    members.sort(Comparator.comparing(t -> String.valueOf(t.getName())));
+                    varint(members.size());
+                    members.forEach(this::type);
+                }
+                case ListType lt -> {
+                    varint(LIST);
+                    type(lt.contentType());
+                }
+                case GenericType gt -> {
+                    varint(GENERIC);
+                    string(gt.key());
+                }
+                case UnknownType ukt -> {
+                    varint(UNKNOWN);
+                    string(ukt.typeName);
+                }
+                case ExternalType et -> {
+                    varint(EXTERNAL);
+                    string(et.foundClass().getName());
+                }
+                default -> throw new IllegalArgumentException("Cannot encode type " + type);
+            }
+        }
+    }
+
+    private static final class Decoder {
+        final InputStream in;
+        final String[] strings;
+        final List<StructType> read = new ArrayList<>();
+
+        Decoder(InputStream in, String[] strings) {
+            this.in = in;
+            this.strings = strings;
+        }
+
+        int varint() throws IOException {
+            return readVarint(in);
+        }
+
+        String string() throws IOException {
+            int index = varint();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        List<String> strings() throws IOException {
+            int size = varint();
+            var list = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) list.add(string());
+            return list;
+        }
+
+        void parameters(List<Pair<String, ImpType>> into) throws IOException {
+            int size = varint();
+            for (int i = 0; i < size; i++) {
+                var name = string();
+                into.add(Pair.with(name, type()));
+            }
+        }
+
+        ImpType type() throws IOException {
+            int tag = varint();
+            switch (tag) {
+                case BUILTIN:
+                    return BuiltInType.values()[varint()];
+                case FUNC: {
+                    var name = string();
+                    var ft = new FuncType(name, new ArrayList<>());
+                    read.add(ft);
+                    ft.owner = string();
+                    int flags = varint();
+                    ft.glue = (flags & GLUE) != 0;
+                    ft.isPrefixed = (flags & PREFIXED) != 0;
+                    ft.generics.addAll(strings());
+                    parameters(ft.parameters);
+                    ft.returnType = type();
+                    return ft;
+                }
+                case STRUCT: {
+                    var st = new StructType(string(), new ArrayList<>(), new ArrayList<>());
+                    read.add(st);
+                    st.qualifiedName = string();
+                    st.parentName = string();
+                    st.generics.addAll(strings());
+                    parameters(st.parameters);
+                    return st;
+                }
+                case UNION: {
+                    int size = varint();
+                    var types = new HashSet<ImpType>();
+                    for (int i = 0; i < size; i++) types.add(type());
+                    return TypeTable.intern(new UnionType(types));
+                }
+                case LIST:
+                    return TypeTable.intern(new ListType(type()));
+                case GENERIC:
+                    return new GenericType(string());
+                case UNKNOWN:
+                    return new UnknownType(string());
+                case EXTERNAL: {
+                    var className = string();
+                    try {
+                        return new ExternalType(Class.forName(className));
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("External type " + className + " is not on the classpath.", e);
+                    }
+                }
+                case MONOMORPHIZED: {
+                    var struct = (StructType) type();
+                    var resolved = new HashMap<String, ImpType>();
+                    int size = varint();
+                    for (int i = 0; i < size; i++) {
+                        var key = string();
+                        resolved.put(key, type());
+                    }
+                    return struct.instantiate(resolved);
+                }
+                case REFERENCE:
+                    return read.get(varint());
+                default:
+                    throw new IOException("Unknown type tag " + tag + " in type signature.");
+            }
+        }
+    }
+}
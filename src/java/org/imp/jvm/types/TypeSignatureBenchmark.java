@@ -0,0 +1,114 @@
+package org.imp.jvm.types;
+
+import org.imp.jvm.errors.Comptime;
+import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.ExportTable;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare TypeSignature against Java serialization, the previous ExportTable
+ * encoding, on the types exported by `sample/lib`. Blob sizes are printed
+ * before the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TypeSignatureBenchmark {
+
+	@Param({"signature", "java"})
+	public String format;
+
+	private List<ImpType> types;
+	private List<byte[]> blobs;
+
+	public static void main(String[] args) throws Exception {
+		for (var type : loadExports()) {
+			System.out.printf("%-12s %-10s signature %4d bytes, java %4d bytes%n",
+					type.getName(), type.kind(), TypeSignature.encode(type).length, javaEncode(type).length);
+		}
+
+		Options options = new OptionsBuilder()
+				.include(TypeSignatureBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * Run the front-end over `sample/lib` and collect every exported type.
+	 * strings.imp does not parse yet, so its padStart signature is built by hand.
+	 */
+	static List<ImpType> loadExports() throws IOException, Comptime.CompilerError {
+		var db = Files.createTempFile("imp-bench", ".db");
+		ExportTable.initDB(db);
+		ExportTable.connectDB(db);
+
+		var exports = new ArrayList<ImpType>();
+		var sample = Path.of(System.getProperty("user.dir"), "sample").toString();
+		for (var name : List.of("date", "person")) {
+			var source = new Compiler().parse(sample, "lib", name);
+			exports.addAll(source.exports.values());
+		}
+
+		var padStart = new FuncType("padStart", new ArrayList<>(List.of(
+				Pair.with("self", BuiltInType.STRING),
+				Pair.with("targetLength", BuiltInType.INT),
+				Pair.with("padString", BuiltInType.STRING)
+		)));
+		padStart.returnType = BuiltInType.STRING;
+		padStart.isPrefixed = true;
+		exports.add(padStart);
+		return exports;
+	}
+
+	static byte[] javaEncode(ImpType type) throws IOException {
+		var baos = new ByteArrayOutputStream();
+		var oos = new ObjectOutputStream(baos);
+		oos.writeObject(type);
+		return baos.toByteArray();
+	}
+
+	static ImpType javaDecode(byte[] bytes) throws IOException, ClassNotFoundException {
+		return (ImpType) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		types = loadExports();
+		blobs = new ArrayList<>();
+		for (var type : types) {
+			blobs.add(format.equals("java") ? javaEncode(type) : TypeSignature.encode(type));
+		}
+	}
+
+	@Benchmark
+	public int encode() throws IOException {
+		int size = 0;
+		for (var type : types) {
+			size += (format.equals("java") ? javaEncode(type) : TypeSignature.encode(type)).length;
+		}
+		return size;
+	}
+
+	@Benchmark
+	public List<ImpType> decode() throws IOException, ClassNotFoundException {
+		var decoded = new ArrayList<ImpType>(blobs.size());
+		for (var blob : blobs) {
+			decoded.add(format.equals("java") ? javaDecode(blob) : TypeSignature.decode(blob));
+		}
+		return decoded;
+	}
+}
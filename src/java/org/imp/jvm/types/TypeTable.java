@@ -0,0 +1,84 @@
+package org.imp.jvm.types;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Hash-consed list and union types. Interning a closed type, one with no
+ * UnknownType left in it, returns the single instance of its structure, so
+ * identical types are reference-equal and TypeResolver can memoize matches on
+ * them. Structs are nominal and keep their own identity; a union or list of a
+ * struct is canonical per struct instance, not per struct name.
+ */
+public class TypeTable {
+    private static final ConcurrentHashMap<Object, ListType> lists = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Set<Object>, UnionType> unions = new ConcurrentHashMap<>();
+    private static final Set<Ref> canonical = ConcurrentHashMap.newKeySet();
+
+    // Compares a type by identity
+    private record Ref(ImpType type) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref r && r.type == type;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+    }
+
+    /**
+     * @return the canonical instance of `type`, or `type` itself if it is open or nominal
+     */
+    public static ImpType intern(ImpType type) {
+        if (type instanceof ListType lt) {
+            var content = intern(lt.contentType());
+            if (!closed(content)) return type;
+            return lists.computeIfAbsent(key(content), k -> register(content == lt.contentType() ? lt : new ListType(content)));
+        }
+        if (type instanceof UnionType ut) {
+            var members = ut.types.stream().map(TypeTable::intern).collect(Collectors.toSet());
+            if (!members.stream().allMatch(TypeTable::closed)) return type;
+            var key = members.stream().map(TypeTable::key).collect(Collectors.toUnmodifiableSet());
+            return unions.computeIfAbsent(key, k -> register(new UnionType(Set.copyOf(members))));
+        }
+        return type;
+    }
+
+    /**
+     * Forget every interned type and the matches memoized on them. Types interned
+     * before are no longer canonical, so this must run before a compilation, not
+     * during one.
+     */
+    public static void reset() {
+        lists.clear();
+        unions.clear();
+        canonical.clear();
+        TypeResolver.resetMatches();
+    }
+
+    /**
+     * Canonical types are immutable, any two are equal only if they are the same instance.
+     */
+    public static boolean isCanonical(ImpType type) {
+        return type instanceof BuiltInType || type instanceof ExternalType || canonical.contains(new Ref(type));
+    }
+
+    // Nothing in the type is left for the type checker to resolve
+    private static boolean closed(ImpType type) {
+        if (type instanceof ListType || type instanceof UnionType) return isCanonical(type);
+        return !(type instanceof UnknownType);
+    }
+
+    // Value types, and type parameters by name, compare by value, every other type by identity
+    private static Object key(ImpType type) {
+        return type instanceof BuiltInType || type instanceof ExternalType || type instanceof GenericType ? type : new Ref(type);
+    }
+
+    private static <T extends ImpType> T register(T type) {
+        canonical.add(new Ref(type));
+        return type;
+    }
+}
@@ -1,12 +1,21 @@
 package org.imp.jvm.types;
 
+import org.imp.runtime.Union;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class UnionType implements ImpType {
+    private static final String RUNTIME = Union.class.getName().replace('.', '/');
+    private static final List<BuiltInType> packable = List.of(BuiltInType.INT, BuiltInType.FLOAT, BuiltInType.DOUBLE, BuiltInType.BOOLEAN);
+
     public Set<ImpType> types;
+    // getName() of `named`, rebuilt when the type checker replaces `types`
+    private String name;
+    private Set<ImpType> named;
 
     public UnionType(Set<ImpType> types) {
         this.types = types;
@@ -21,7 +30,54 @@ public class UnionType implements ImpType {
 
     @Override
     public String getDescriptor() {
-        return "Ljava/lang/Object;";
+        return isPacked() ? "J" : "Ljava/lang/Object;";
+    }
+
+    /**
+     * Unions of only int, float, double and bool are stored unboxed in a long, see Union.
+     */
+    public boolean isPacked() {
+        return !types.isEmpty() && packable.containsAll(types);
+    }
+
+    /**
+     * @return the Union tag of a member of a packed union
+     */
+    public static int tag(BuiltInType member) {
+        return switch (member) {
+            case INT -> Union.INT;
+            case FLOAT -> Union.FLOAT;
+            case BOOLEAN -> Union.BOOL;
+            default -> Union.DOUBLE;
+        };
+    }
+
+    /**
+     * Replace the member value on top of the stack with the packed union.
+     */
+    public static void pack(MethodVisitor mv, BuiltInType member) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "of", "(" + member.getDescriptor() + ")J", false);
+    }
+
+    /**
+     * Replace the packed union on top of the stack with its value as `member`.
+     */
+    public static void unpack(MethodVisitor mv, BuiltInType member) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, member.getName() + "Value", "(J)" + member.getDescriptor(), false);
+    }
+
+    /**
+     * Replace the packed union on top of the stack with its member tag.
+     */
+    public static void tag(MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "tag", "(J)I", false);
+    }
+
+    /**
+     * Replace the packed union on top of the stack with its boxed member.
+     */
+    public static void box(MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "box", "(J)Ljava/lang/Object;", false);
     }
 
 
@@ -32,18 +88,22 @@ public class UnionType implements ImpType {
 
     @Override
     public int getLoadVariableOpcode() {
-        return Opcodes.ALOAD;
+        return isPacked() ? Opcodes.LLOAD : Opcodes.ALOAD;
     }
 
     @Override
     public String getName() {
-        return types.stream().map(ImpType::getName).collect(Collectors.joining(" | "));
+        if (named != types) {
+            name = types.stream().map(ImpType::getName).collect(Collectors.joining(" | "));
+            named = types;
+        }
+        return name;
     }
 
 
     @Override
     public int getReturnOpcode() {
-        return Opcodes.ARETURN;
+        return isPacked() ? Opcodes.LRETURN : Opcodes.ARETURN;
     }
 
 
@@ -65,6 +125,6 @@ public class UnionType implements ImpType {
 
     @Override
     public String toString() {
-        return types.stream().map(ImpType::getName).collect(Collectors.joining(" | "));
+        return getName();
     }
 }
@@ -8,6 +8,11 @@ public class UnknownType implements ImpType, Serializable {
 	static int counter = 1;
 	public final String typeName;
 
+	// Union-find over type variables, see TypeInference. A null parent is a root.
+	private transient UnknownType parent;
+	private transient int rank;
+	private transient ImpType solution;
+
 	public UnknownType(String typeName) {
 		this.typeName = typeName;
 		counter++;
@@ -19,6 +24,45 @@ public class UnknownType implements ImpType, Serializable {
 	}
 
 
+	private UnknownType find() {
+		var root = this;
+		while (root.parent != null) {
+			// Path halving
+			if (root.parent.parent != null) root.parent = root.parent.parent;
+			root = root.parent;
+		}
+		return root;
+	}
+
+	/**
+	 * Make both variables stand for the same type.
+	 */
+	void unify(UnknownType other) {
+		var a = find();
+		var b = other.find();
+		if (a == b) return;
+		if (a.rank < b.rank) {
+			var t = a;
+			a = b;
+			b = t;
+		}
+		b.parent = a;
+		if (a.rank == b.rank) a.rank++;
+		if (a.solution == null) a.solution = b.solution;
+	}
+
+	void solve(ImpType type) {
+		var root = find();
+		if (root.solution == null) root.solution = type;
+	}
+
+	/**
+	 * @return the type this variable was solved to, or null
+	 */
+	public ImpType solution() {
+		return find().solution;
+	}
+
 	@Override
 	public Object getDefaultValue() {
 		return null;
@@ -4,36 +4,101 @@ import org.imp.jvm.Constants;
 import org.imp.jvm.Util;
 import org.imp.jvm.parser.Expr;
 import org.imp.jvm.parser.tokenizer.Token;
+import org.imp.jvm.parser.tokenizer.TokenType;
 import org.imp.jvm.types.BuiltInType;
 import org.imp.jvm.types.ImpType;
+import org.imp.jvm.types.TypeResolver;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Helper functions for CodegenVisitor.
  */
 public class BinaryExprVisitor {
 
+    /**
+     * Flattens a chain of string `+` into one invokedynamic to StringConcatFactory,
+     * like javac does. Literal operands are folded into the recipe, everything else
+     * is pushed in source order and passed as an argument.
+     */
     public static void concatenateStrings(GeneratorAdapter ga, Expr.Binary expr, CodegenVisitor visitor) {
-        ga.visitTypeInsn(Opcodes.NEW, "java/lang/StringBuilder");
-        ga.visitInsn(Opcodes.DUP);
-        ga.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", Constants.Init, "()V", false);
-
-        expr.left.accept(visitor);
+        var operands = new ArrayList<Expr>();
+        collectConcatOperands(expr.left, operands);
+        collectConcatOperands(expr.right, operands);
+
+        var recipe = new StringBuilder();
+        var descriptor = new StringBuilder("(");
+        int slots = 0;
+        for (var operand : operands) {
+            var constant = concatConstant(operand);
+            if (constant.isPresent()) {
+                recipe.append(constant.get());
+                continue;
+            }
+            var type = Type.getType(operand.realType.getDescriptor());
+            // The bootstrap method accepts at most 200 argument slots
+            if (slots + type.getSize() > 200) {
+                emitConcat(ga, descriptor.append(")Ljava/lang/String;").toString(), recipe.toString());
+                recipe.setLength(0);
+                descriptor.setLength(0);
+                descriptor.append("(Ljava/lang/String;");
+                recipe.append('\u0001');
+                slots = 1;
+            }
+            operand.accept(visitor);
+            recipe.append('\u0001');
+            descriptor.append(type.getDescriptor());
+            slots += type.getSize();
+        }
 
-        String leftExprDescriptor = expr.left.realType.getDescriptor();
-        String descriptor = "(" + leftExprDescriptor + ")Ljava/lang/StringBuilder;";
-        ga.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", descriptor, false);
+        if (slots == 0) {
+            ga.push(recipe.toString());
+        } else {
+            emitConcat(ga, descriptor.append(")Ljava/lang/String;").toString(), recipe.toString());
+        }
+    }
 
-        expr.right.accept(visitor);
+    private static void emitConcat(GeneratorAdapter ga, String descriptor, String recipe) {
+        ga.invokeDynamic(Constants.MakeConcatWithConstants.getName(), descriptor, Constants.MakeConcatWithConstants, recipe);
+    }
 
-        String rightExprDescriptor = expr.right.realType.getDescriptor();
-        descriptor = "(" + rightExprDescriptor + ")Ljava/lang/StringBuilder;";
-        ga.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", descriptor, false);
-        ga.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+    /**
+     * Operands of nested string additions are concatenated in the same call,
+     * `(a + b) + c` and `a + (b + c)` both become [a, b, c].
+     */
+    private static void collectConcatOperands(Expr expr, List<Expr> operands) {
+        if (expr instanceof Expr.Grouping grouping && grouping.expr instanceof Expr.Binary) {
+            collectConcatOperands(grouping.expr, operands);
+        } else if (expr instanceof Expr.Binary binary
+                && binary.operator.type() == TokenType.ADD
+                && binary.realType.equals(BuiltInType.STRING)) {
+            collectConcatOperands(binary.left, operands);
+            collectConcatOperands(binary.right, operands);
+        } else {
+            operands.add(expr);
+        }
+    }
 
+    /**
+     * The text a literal contributes to the result, if it can go into the recipe.
+     * Recipes use \u0001 for arguments and \u0002 for constants, so literals
+     * containing those are passed as arguments instead.
+     */
+    private static Optional<String> concatConstant(Expr expr) {
+        if (!(expr instanceof Expr.Literal literal) || !(literal.realType instanceof BuiltInType bt)) {
+            return Optional.empty();
+        }
+        var value = String.valueOf(TypeResolver.getValueFromString(literal.literal.source(), bt));
+        if (value.indexOf('\u0001') >= 0 || value.indexOf('\u0002') >= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(value);
     }
 
 
@@ -139,17 +204,8 @@ public class BinaryExprVisitor {
         Label endLabel = new Label();
         Label falseLabel = new Label();
 
-        int opcode = switch (operator.type()) {
-            case EQUAL -> GeneratorAdapter.NE;
-            case NOTEQUAL -> GeneratorAdapter.EQ;
-            case LT -> GeneratorAdapter.GT;
-            case GT -> GeneratorAdapter.LT;
-            case LE -> GeneratorAdapter.GE;
-            case GE -> GeneratorAdapter.LE;
-            default -> throw new IllegalStateException("Unexpected value: " + operator.type());
-        };
         // if false, jump to falseLabel
-        ga.ifCmp(cmpType, opcode, falseLabel);
+        jumpIfFalse(ga, cmpType, operator, falseLabel);
         // else set true and jump to endLabel
         ga.push(true);
         ga.goTo(endLabel);
@@ -159,6 +215,113 @@ public class BinaryExprVisitor {
         ga.mark(endLabel);
     }
 
+    /**
+     * The comparison mode that jumps when `operator` is false.
+     */
+    private static int falseMode(Token operator) {
+        return switch (operator.type()) {
+            case EQUAL -> GeneratorAdapter.NE;
+            case NOTEQUAL -> GeneratorAdapter.EQ;
+            case LT -> GeneratorAdapter.GE;
+            case GT -> GeneratorAdapter.LE;
+            case LE -> GeneratorAdapter.GT;
+            case GE -> GeneratorAdapter.LT;
+            default -> throw new IllegalStateException("Unexpected value: " + operator.type());
+        };
+    }
+
+    /**
+     * Jump to `target` when comparing the two values on the stack with `operator` is
+     * false. Every ordering of NaN is false, so floats and doubles are compared with
+     * the instruction that makes NaN take the jump, like javac does. GeneratorAdapter's
+     * ifCmp picks the one that makes NaN fall through.
+     */
+    private static void jumpIfFalse(GeneratorAdapter ga, Type cmpType, Token operator, Label target) {
+        int mode = falseMode(operator);
+        if (cmpType.getSort() != Type.FLOAT && cmpType.getSort() != Type.DOUBLE) {
+            ga.ifCmp(cmpType, mode, target);
+            return;
+        }
+        // `g` compares NaN as 1, so `<` and `<=` jump on `>=` and `>`; `l` compares it as -1
+        boolean nanGreater = operator.type() == TokenType.LT || operator.type() == TokenType.LE;
+        if (cmpType.getSort() == Type.FLOAT) {
+            ga.visitInsn(nanGreater ? Opcodes.FCMPG : Opcodes.FCMPL);
+        } else {
+            ga.visitInsn(nanGreater ? Opcodes.DCMPG : Opcodes.DCMPL);
+        }
+        ga.ifZCmp(mode, target);
+    }
+
+    /**
+     * Compile a condition straight into control flow: jump to `target` if `condition`
+     * evaluates to `jumpIf`, otherwise fall through. Comparisons, `and`, `or` and `not`
+     * never push a boolean, everything else is evaluated and tested with one jump.
+     */
+    public static void branch(GeneratorAdapter ga, Expr condition, boolean jumpIf, Label target, CodegenVisitor visitor) {
+        switch (condition) {
+            case Expr.Grouping grouping -> branch(ga, grouping.expr, jumpIf, target, visitor);
+            case Expr.Prefix prefix && prefix.operator.type() == TokenType.NOT -> branch(ga, prefix.right, !jumpIf, target, visitor);
+            case Expr.Literal literal && literal.realType == BuiltInType.BOOLEAN -> {
+                if (TypeResolver.getValueFromString(literal.literal.source(), BuiltInType.BOOLEAN).equals(jumpIf)) {
+                    ga.goTo(target);
+                }
+            }
+            case Expr.Binary binary && (binary.operator.type() == TokenType.AND || binary.operator.type() == TokenType.OR) -> {
+                // `a and b` is true when both are, `a or b` is false when both are. Otherwise,
+                // the left side alone decides and the right side is skipped.
+                boolean and = binary.operator.type() == TokenType.AND;
+                if (jumpIf != and) {
+                    branch(ga, binary.left, jumpIf, target, visitor);
+                    branch(ga, binary.right, jumpIf, target, visitor);
+                } else {
+                    Label skip = new Label();
+                    branch(ga, binary.left, !jumpIf, skip, visitor);
+                    branch(ga, binary.right, jumpIf, target, visitor);
+                    ga.mark(skip);
+                }
+            }
+            case Expr.Binary binary && isComparison(binary.operator) && !binary.realType.equals(BuiltInType.STRING) -> {
+                var cmpType = castAndAccept(ga, binary.left, binary.right, visitor);
+                int falseMode = falseMode(binary.operator);
+                if (!jumpIf) {
+                    jumpIfFalse(ga, cmpType, binary.operator, target);
+                } else if ((cmpType.getSort() == Type.FLOAT || cmpType.getSort() == Type.DOUBLE)
+                        && falseMode != GeneratorAdapter.EQ && falseMode != GeneratorAdapter.NE) {
+                    // Inverting a float ordering changes how NaN compares, jump around instead
+                    Label skip = new Label();
+                    jumpIfFalse(ga, cmpType, binary.operator, skip);
+                    ga.goTo(target);
+                    ga.mark(skip);
+                } else {
+                    ga.ifCmp(cmpType, invert(falseMode), target);
+                }
+            }
+            default -> {
+                condition.accept(visitor);
+                ga.ifZCmp(jumpIf ? GeneratorAdapter.NE : GeneratorAdapter.EQ, target);
+            }
+        }
+    }
+
+    private static boolean isComparison(Token operator) {
+        return switch (operator.type()) {
+            case EQUAL, NOTEQUAL, LT, GT, LE, GE -> true;
+            default -> false;
+        };
+    }
+
+    private static int invert(int mode) {
+        return switch (mode) {
+            case GeneratorAdapter.EQ -> GeneratorAdapter.NE;
+            case GeneratorAdapter.NE -> GeneratorAdapter.EQ;
+            case GeneratorAdapter.LT -> GeneratorAdapter.GE;
+            case GeneratorAdapter.GE -> GeneratorAdapter.LT;
+            case GeneratorAdapter.GT -> GeneratorAdapter.LE;
+            case GeneratorAdapter.LE -> GeneratorAdapter.GT;
+            default -> throw new IllegalStateException("Unexpected value: " + mode);
+        };
+    }
+
     /**
      * Applies the modulo operator to two expressions. Only primitive types supported.
      */
@@ -6,27 +6,34 @@ import org.imp.jvm.BytecodeGenerator;
 import org.imp.jvm.Constants;
 import org.imp.jvm.Util;
 import org.imp.jvm.domain.Environment;
+import org.imp.jvm.domain.LocalSlots;
 import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.domain.Symbol;
 import org.imp.jvm.errors.Comptime;
 import org.imp.jvm.parser.Expr;
 import org.imp.jvm.parser.Stmt;
 import org.imp.jvm.parser.tokenizer.TokenType;
 import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.Glue;
 import org.imp.jvm.types.*;
+import org.imp.runtime.Batteries;
 import org.javatuples.Pair;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.TableSwitchGenerator;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Stack;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
-    public final static int flags = ClassWriter.COMPUTE_FRAMES + ClassWriter.COMPUTE_MAXS;
     public final static int CLASS_VERSION = 61;
     public final Environment rootEnvironment;
     public final SourceFile source;
@@ -65,8 +72,11 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
         if (expr.left instanceof Expr.Identifier id) {
             expr.right.accept(this);
-            var index = funcType.localMap.get(id.identifier.source());
-            ga.storeLocal(index);
+            var symbol = currentEnvironment.resolve(id);
+            if (symbol.type instanceof UnionType ut) {
+                convert(ga, expr.right.realType, ut);
+            }
+            store(ga, symbol);
         } else if (expr.left instanceof Expr.PropertyAccess pa) {
             var lType = expr.left.realType;
             var rType = expr.right.realType;
@@ -88,11 +98,8 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
             // Generate expr
             expr.right.accept(this);
 
-            // Only box if the arg type is a Java primitive
-            if (rType instanceof BuiltInType btArg) {
-                if (lType instanceof UnionType) {
-                    btArg.doBoxing(ga);
-                }
+            if (lType instanceof UnionType) {
+                convert(ga, rType, lType);
             }
 
             // Put expr into field
@@ -137,7 +144,14 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
     @Override
     public Optional<ClassWriter> visitBlockStmt(Stmt.Block block) {
+        // Blocks can be nested directly, e.g. the branch left by OptimizerVisitor in place of an if
+        var outer = currentEnvironment;
+        currentEnvironment = block.environment;
+        var locals = functionStack.peek().locals;
+        locals.enter();
         for (var stmt : block.statements) stmt.accept(this);
+        locals.exit();
+        currentEnvironment = outer;
         return Optional.empty();
     }
 
@@ -153,6 +167,7 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
         if (expr.item.realType instanceof FuncType callType) {
             if (callType.glue) {
+                callType = Glue.specialize(callType, expr.arguments.stream().map(a -> a.realType).toList());
                 String owner = callType.owner;
                 /*
                  * Before calling the function, we must consider 3 cases:
@@ -187,53 +202,22 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
                 Util.zip(params, expr.arguments, (param, arg) -> {
                     arg.accept(this);
-                    // Only box if the arg type is a Java primitive and the param type is Object
-                    if (arg.realType != null && arg.realType instanceof BuiltInType btArg) {
-                        if (param.getValue1() instanceof ExternalType et && et.foundClass().equals(Object.class)) {
-                            btArg.doBoxing(funcType.ga);
-                        }
+                    convert(funcType.ga, arg.realType, param.getValue1());
+                    // Lists are stored as java.util.List, unboxed overloads take the concrete class
+                    if (param.getValue1() instanceof ExternalType et && ListType.isPrimitiveList(et.foundClass())) {
+                        funcType.ga.checkCast(Type.getType(et.foundClass()));
                     }
                 });
 
                 funcType.ga.visitMethodInsn(Opcodes.INVOKESTATIC, owner, name, methodDescriptor, false);
             } else {
-                // Generate arguments
-                var ga = funcType.ga;
-                Util.zip(callType.parameters, expr.arguments, (param, arg) -> {
-                    arg.accept(this);
-                    // Only box if the arg type is a Java primitive
-                    if (arg.realType != null && arg.realType instanceof BuiltInType btArg) {
-                        switch (param.getValue1()) {
-                            case ExternalType et && et.foundClass().equals(Object.class) -> btArg.doBoxing(ga);
-                            case UnionType ut -> btArg.doBoxing(funcType.ga);
-                            default -> {
-                            }
-                        }
-                    }
-                });
-
-                var specialization = callType.buildSpecialization(expr.arguments);
-                var returnType = callType.returnType;
-                if (returnType instanceof GenericType gt) {
-                    returnType = FuncType.getSpecializedType(specialization, gt.key());
-
-                }
-
-                var parameters = callType.buildParametersFromSpecialization(specialization);
-
-                String descriptor = Util.getMethodDescriptor(parameters, returnType);
-
-                // Call the invoke method
-                String methodDescriptor = Util.getMethodDescriptor(callType.parameters, callType.returnType);
-                methodDescriptor = descriptor;
-                String name = "_" + callType.name;
-                String owner = FilenameUtils.removeExtension(source.getFullRelativePath());
-
-                funcType.ga.visitMethodInsn(Opcodes.INVOKESTATIC, owner, name, methodDescriptor, false);
+                pushArguments(callType, expr);
+                invoke(callType, specialization(callType, expr));
             }
 
-        } else if (expr.item.realType instanceof StructType st) {
+        } else if (expr.item.realType instanceof StructType generic) {
             var ga = funcType.ga;
+            var st = expr.realType instanceof MonomorphizedStruct instance ? instance : generic;
 
             ga.newInstance(Type.getType("L" + st.qualifiedName + ";"));
             ga.visitInsn(Opcodes.DUP);
@@ -245,10 +229,7 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
                 // If param is an "any" type like Generics or Unions we need to use the param type instead of the arg type
                 if (paramType instanceof UnionType ut || paramType instanceof GenericType) {
                     typeDescriptor.append(paramType.getDescriptor());
-                    // Only box if the arg type is a Java primitive and the param type is Object
-                    if (arg.realType instanceof BuiltInType btArg) {
-                        btArg.doBoxing(ga);
-                    }
+                    convert(ga, arg.realType, paramType);
 
                 } else {
                     typeDescriptor.append(arg.realType.getDescriptor());
@@ -260,13 +241,48 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
 
         } else {
-            System.err.println("Bad!");
-            System.exit(43);
+            Util.exit("Bad!", 43);
         }
 
         return Optional.empty();
     }
 
+    /**
+     * Generate the arguments of a call to a function of this file.
+     */
+    private void pushArguments(FuncType callType, Expr.Call expr) {
+        var ga = functionStack.peek().ga;
+        Util.zip(callType.parameters, expr.arguments, (param, arg) -> {
+            arg.accept(this);
+            // Generic parameters are specialized to the argument type, so only these convert
+            switch (param.getValue1()) {
+                case ExternalType et && et.foundClass().equals(Object.class) -> convert(ga, arg.realType, et);
+                case UnionType ut -> convert(ga, arg.realType, ut);
+                default -> {
+                }
+            }
+        });
+    }
+
+    /**
+     * Calls with the same type arguments share the instantiation TypeCheckVisitor recorded.
+     * Only valid once the arguments have been generated, which specializes their types.
+     */
+    private static Map<String, ImpType> specialization(FuncType callType, Expr.Call expr) {
+        return callType.hasGenerics() ? callType.specialize(expr.arguments) : Map.of();
+    }
+
+    private void invoke(FuncType callType, Map<String, ImpType> specialization) {
+        var returnType = FuncType.getSpecializedType(specialization, callType.returnType);
+
+        var parameters = callType.buildParametersFromSpecialization(specialization);
+        String descriptor = Util.getMethodDescriptor(parameters, returnType);
+        String name = "_" + callType.name;
+        String owner = FilenameUtils.removeExtension(source.getFullRelativePath());
+
+        functionStack.peek().ga.visitMethodInsn(Opcodes.INVOKESTATIC, owner, name, descriptor, false);
+    }
+
     @Override
     public Optional<ClassWriter> visitEmpty(Expr.Empty empty) {
         return Optional.empty();
@@ -276,10 +292,11 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     public Optional<ClassWriter> visitEmptyList(Expr.EmptyList emptyList) {
         var ga = functionStack.peek().ga;
 
-        ga.newInstance(Constants.ArrayListType);
+        var listType = ((ListType) specialized(emptyList.realType)).primitiveList().map(Type::getType).orElse(Constants.ArrayListType);
+        ga.newInstance(listType);
         ga.dup();
 
-        ga.invokeConstructor(Constants.ArrayListType, new Method(Constants.Init, "()V"));
+        ga.invokeConstructor(listType, new Method(Constants.Init, "()V"));
         return Optional.empty();
     }
 
@@ -307,6 +324,53 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         var funcType = functionStack.peek();
         var ga = functionStack.peek().ga;
         currentEnvironment = stmt.block.environment;
+        // Loop state and the loop variable are freed when the loop ends
+        funcType.locals.enter();
+
+        // range() calls and primitive lists become counted int loops, without
+        // an Iterator or boxing
+        if (stmt.expr instanceof Expr.Call call && isRangeCall(call)) {
+            call.arguments.get(0).accept(this);
+            int counter = ga.newLocal(Type.INT_TYPE);
+            ga.storeLocal(counter);
+            call.arguments.get(1).accept(this);
+            int limit = ga.newLocal(Type.INT_TYPE);
+            ga.storeLocal(limit);
+
+            countedLoop(stmt, counter, limit, () -> {
+                ga.loadLocal(counter);
+                return BuiltInType.INT;
+            });
+            funcType.locals.exit();
+            currentEnvironment = currentEnvironment.getParent();
+            return Optional.empty();
+        }
+        if (stmt.expr.realType instanceof ListType lt && lt.primitiveList().isPresent()) {
+            var listType = Type.getType(lt.primitiveList().get());
+            var contentType = (BuiltInType) lt.contentType();
+            stmt.expr.accept(this);
+            ga.checkCast(listType);
+            int list = ga.newLocal(listType);
+            ga.storeLocal(list);
+            ga.push(0);
+            int counter = ga.newLocal(Type.INT_TYPE);
+            ga.storeLocal(counter);
+            ga.loadLocal(list);
+            ga.invokeVirtual(listType, new Method("size", "()I"));
+            int limit = ga.newLocal(Type.INT_TYPE);
+            ga.storeLocal(limit);
+
+            countedLoop(stmt, counter, limit, () -> {
+                ga.loadLocal(list);
+                ga.loadLocal(counter);
+                ga.invokeVirtual(listType, new Method("at", "(I)" + contentType.getDescriptor()));
+                return contentType;
+            });
+            funcType.locals.exit();
+            currentEnvironment = currentEnvironment.getParent();
+            return Optional.empty();
+        }
+
         var startLabel = new Label();
         var endLabel = new Label();
 
@@ -318,7 +382,6 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         } else {
             stmt.expr.accept(this);
             stmt.localExprIndex = ga.newLocal(Constants.IteratorType);
-            funcType.localMap.put("______", stmt.localExprIndex);
             ga.storeLocal(stmt.localExprIndex, Constants.IteratorType);
             ga.mark(startLabel);
             ga.loadLocal(stmt.localExprIndex);
@@ -337,7 +400,7 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         ga.invokeInterface(Constants.IteratorType, new Method("next", "()Ljava/lang/Object;"));
         BuiltInType.INT.doUnboxing(ga);
         stmt.localNameIndex = ga.newLocal(Type.getType(BuiltInType.INT.getDescriptor()));
-        funcType.localMap.put(stmt.name.source(), stmt.localNameIndex);
+        currentEnvironment.lookup(stmt.name.source()).local = stmt.localNameIndex;
         funcType.ga.storeLocal(stmt.localNameIndex, Type.getType(BuiltInType.INT.getDescriptor()));
 
         // Visit body
@@ -347,10 +410,47 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         ga.goTo(startLabel);
         ga.mark(endLabel);
         // Reset scope
+        funcType.locals.exit();
         currentEnvironment = currentEnvironment.getParent();
         return Optional.empty();
     }
 
+    private boolean isRangeCall(Expr.Call call) {
+        if (!(call.item instanceof Expr.Identifier id) || call.arguments.size() != 2) return false;
+        var callType = currentEnvironment.getVariable(id.identifier.source());
+        return callType instanceof FuncType ft && ft.glue && ft.name.equals("range")
+                && ft.owner.equals(Type.getInternalName(Batteries.class));
+    }
+
+    /**
+     * Emit `for (; counter < limit; counter++)` where each iteration stores the
+     * element produced by `element` into the loop variable, then runs the body.
+     * The body cannot change the counter, matching iterator semantics.
+     */
+    private void countedLoop(Stmt.For stmt, int counter, int limit, Supplier<BuiltInType> element) {
+        var funcType = functionStack.peek();
+        var ga = funcType.ga;
+        var startLabel = new Label();
+        var endLabel = new Label();
+
+        ga.mark(startLabel);
+        ga.loadLocal(counter);
+        ga.loadLocal(limit);
+        ga.ifICmp(GeneratorAdapter.GE, endLabel);
+
+        var elementType = element.get();
+        var localType = Type.getType(elementType.getDescriptor());
+        stmt.localNameIndex = ga.newLocal(localType);
+        currentEnvironment.lookup(stmt.name.source()).local = stmt.localNameIndex;
+        ga.storeLocal(stmt.localNameIndex, localType);
+
+        stmt.block.accept(this);
+
+        ga.iinc(counter, 1);
+        ga.goTo(startLabel);
+        ga.mark(endLabel);
+    }
+
     @Override
     public Optional<ClassWriter> visitFunctionStmt(Stmt.Function stmt) {
         var funcType = currentEnvironment.getVariableTyped(stmt.name.source(), FuncType.class);
@@ -359,27 +459,27 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         // Common code
         // Generate function signature
         String name = "_" + funcType.name;
+        String owner = FilenameUtils.removeExtension(source.getFullRelativePath());
         var access = Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC;
         // End common code
 
         if (funcType.hasGenerics()) {
 
-            for (Map<String, ImpType> specialization : funcType.specializations) {
+            for (Map<String, ImpType> specialization : funcType.specializations.values()) {
                 funcType.currentSpecialization = specialization;
-                var returnType = funcType.returnType;
-                if (returnType instanceof GenericType gt) {
-                    returnType = FuncType.getSpecializedType(specialization, gt.key());
-                }
+                var returnType = FuncType.getSpecializedType(specialization, funcType.returnType);
 
                 var parameters = funcType.buildParametersFromSpecialization(specialization);
 
                 String descriptor = Util.getMethodDescriptor(parameters, returnType);
 
-                var mv = cw.visitMethod(access, name, descriptor, null, null);
-                funcType.ga = new GeneratorAdapter(mv, access, name, descriptor);
+                var mv = BytecodeGenerator.visitMethod(cw, owner, access, name, descriptor);
+                funcType.locals = new LocalSlots(access, descriptor);
+                funcType.ga = generatorAdapter(mv, access, name, descriptor, funcType.locals);
+                funcType.start = funcType.ga.mark();
                 for (int i = 0; i < funcType.parameters.size(); i++) {
                     var param = funcType.parameters.get(i);
-                    funcType.argMap.put(param.getValue0(), i);
+                    childEnvironment.lookup(param.getValue0()).arg = i;
                 }
 
                 // Generate function body
@@ -396,11 +496,13 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
                 name = "main";
                 descriptor = "([Ljava/lang/String;)V";
             }
-            var mv = cw.visitMethod(access, name, descriptor, null, null);
-            funcType.ga = new GeneratorAdapter(mv, access, name, descriptor);
+            var mv = BytecodeGenerator.visitMethod(cw, owner, access, name, descriptor);
+            funcType.locals = new LocalSlots(access, descriptor);
+            funcType.ga = generatorAdapter(mv, access, name, descriptor, funcType.locals);
+            funcType.start = funcType.ga.mark();
             for (int i = 0; i < funcType.parameters.size(); i++) {
                 var param = funcType.parameters.get(i);
-                funcType.argMap.put(param.getValue0(), i);
+                childEnvironment.lookup(param.getValue0()).arg = i;
             }
 
             // Generate function body
@@ -414,6 +516,44 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         return Optional.empty();
     }
 
+    /**
+     * A GeneratorAdapter whose newLocal takes its slot from `locals`.
+     */
+    private static GeneratorAdapter generatorAdapter(MethodVisitor mv, int access, String name, String descriptor, LocalSlots locals) {
+        return new GeneratorAdapter(Opcodes.ASM9, mv, access, name, descriptor) {
+            @Override
+            protected int newLocalMapping(Type type) {
+                return locals.allocate(type);
+            }
+        };
+    }
+
+    /**
+     * Convert the value of type `from` on top of the stack to how `to` stores it.
+     * Members are packed into primitive-only unions, primitives and packed unions
+     * are boxed where any other union or an Object is expected.
+     */
+    private static void convert(GeneratorAdapter ga, ImpType from, ImpType to) {
+        if (to instanceof UnionType ut && ut.isPacked()) {
+            if (from instanceof BuiltInType bt) UnionType.pack(ga, bt);
+        } else if (to instanceof UnionType || to instanceof GenericType || to == BuiltInType.ANY
+                || to instanceof ExternalType et && et.foundClass().equals(Object.class)) {
+            if (from instanceof BuiltInType bt) bt.doBoxing(ga);
+            else if (from instanceof UnionType ut && ut.isPacked()) UnionType.box(ga);
+        }
+    }
+
+    /**
+     * Store the value on top of the stack into the local or argument `symbol` was given.
+     */
+    private static void store(GeneratorAdapter ga, Symbol symbol) {
+        if (symbol.local != -1) {
+            ga.storeLocal(symbol.local);
+        } else {
+            ga.storeArg(symbol.arg);
+        }
+    }
+
     @Override
     public Optional<ClassWriter> visitGroupingExpr(Expr.Grouping expr) {
         expr.expr.accept(this);
@@ -424,26 +564,19 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     public Optional<ClassWriter> visitIdentifierExpr(Expr.Identifier expr) {
         var funcType = functionStack.peek();
         var ga = funcType.ga;
-        var type = currentEnvironment.getVariable(expr.identifier.source());
-
-        if (type instanceof GenericType gt) {
-            type = funcType.currentSpecialization.get(gt.key());
+        var symbol = currentEnvironment.resolve(expr);
+        if (symbol == null || symbol.local == -1 && symbol.arg == -1) {
+            Comptime.IdentifierNotFound.submit(compiler, file, expr, expr.identifier.source());
+            return Optional.empty();
         }
+        var type = specialized(symbol.type);
 
         expr.realType = type;
 
-        int index;
-        String source = expr.identifier.source();
-        if (funcType.localMap.containsKey(source)) {
-            index = funcType.localMap.get(source);
-            ga.loadLocal(index, Type.getType(type.getDescriptor()));
+        if (symbol.local != -1) {
+            ga.loadLocal(symbol.local, Type.getType(type.getDescriptor()));
         } else {
-            index = funcType.argMap.getOrDefault(source, -1);
-            if (index == -1) {
-                Comptime.IdentifierNotFound.submit(compiler, file, expr, source);
-                return Optional.empty();
-            }
-            ga.loadArg(index);
+            ga.loadArg(symbol.arg);
         }
 
         return Optional.empty();
@@ -456,14 +589,12 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         Label endLabel = new Label();
         Label falseLabel = new Label();
 
-        // Generate condition (returns true or false)
-        stmt.condition.accept(this);
+        // Jump to falseLabel when the condition is false, else fall through to the true block
+        BinaryExprVisitor.branch(ga, stmt.condition, false, falseLabel, this);
 
-        // if condition is true (cond == 0) do trueLabel then jump to end
         currentEnvironment = stmt.trueBlock.environment;
-        ga.ifZCmp(GeneratorAdapter.EQ, falseLabel);
         stmt.trueBlock.accept(this);
-        ga.goTo(endLabel);
+        if (stmt.falseStmt != null) ga.goTo(endLabel);
         ga.mark(falseLabel);
         if (stmt.falseStmt != null) stmt.falseStmt.accept(this);
         ga.mark(endLabel);
@@ -504,9 +635,27 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     public Optional<ClassWriter> visitLiteralList(Expr.LiteralList expr) {
         var ga = functionStack.peek().ga;
 
+        var listType = (ListType) specialized(expr.realType);
+        var primitiveList = listType.primitiveList();
+        if (primitiveList.isPresent()) {
+            // Elements of builtin numeric and bool lists are pushed unboxed
+            var type = Type.getType(primitiveList.get());
+            var contentType = (BuiltInType) listType.contentType();
+            ga.newInstance(type);
+            ga.dup();
+            ga.push(expr.entries.size());
+            ga.invokeConstructor(type, new Method(Constants.Init, "(I)V"));
+            for (var entry : expr.entries) {
+                ga.dup();
+                entry.accept(this);
+                ga.invokeVirtual(type, new Method("push", "(" + contentType.getDescriptor() + ")V"));
+            }
+            return Optional.empty();
+        }
+
         ga.newInstance(Constants.ListWrapperType);
         ga.dup();
-        ga.push(((ListType) expr.realType).contentType().getName());
+        ga.push(listType.contentType().getName());
         ga.invokeConstructor(Constants.ListWrapperType, new Method(Constants.Init, "(Ljava/lang/String;)V"));
         ga.dup();
         ga.invokeVirtual(Constants.ListWrapperType, new Method("list", "()Ljava/util/ArrayList;"));
@@ -518,10 +667,7 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
             ga.dup();
 
             entry.accept(this);
-            var rt = entry.realType;
-            if (rt instanceof BuiltInType bt) {
-                bt.doBoxing(ga);
-            }
+            convert(ga, entry.realType, BuiltInType.ANY);
             ga.invokeVirtual(Constants.ArrayListType, new Method("add", "(Ljava/lang/Object;)Z"));
             ga.pop();
         }
@@ -530,8 +676,9 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     }
 
     /**
-     * Converting match statements to a sequence of if statements with `instanceof`
-     * calls provides union type checking. Each case generates its own if statement.
+     * A match is an invokedynamic TypeSwitch call site that maps the value to the
+     * index of its case, followed by a switch on that index. Each case casts the
+     * value to its type, and unboxes numbers into a primitive local.
      */
     @Override
     public Optional<ClassWriter> visitMatch(final Stmt.Match match) {
@@ -539,86 +686,136 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         var funcType = functionStack.peek();
         var ga = funcType.ga;
 
+        if (match.expr.realType instanceof UnionType ut && ut.isPacked()) {
+            matchPacked(match, ut);
+            return Optional.empty();
+        }
+
         // Execute and store the match expression as an untyped Object
         match.expr.accept(this);
+        funcType.locals.enter();
         int localExprIndex = ga.newLocal(Constants.ObjectType);
-        var s = "bruh";
-        funcType.localMap.put(s, localExprIndex);
         ga.storeLocal(localExprIndex);
 
-        for (Stmt.TypeStmt typeStmt : match.cases.keySet()) {
-            var pair = match.cases.get(typeStmt);
-            var scopedName = pair.getValue0();
-            var block = pair.getValue1();
-            // Todo: fix this with TypeCheckVisitor, should have no UKTs in this pass
+        var typeStmts = new ArrayList<>(match.cases.keySet());
+        var types = new ArrayList<ImpType>();
+        var labels = new Object[typeStmts.size()];
+        for (var typeStmt : typeStmts) {
             var t = match.types.get(typeStmt);
-            if (t instanceof UnknownType ukt) {
-                var attempt = currentEnvironment.getVariable(ukt.typeName);
-                if (attempt != null) {
-                    t = attempt;
-                }
-            }
-
-            var end = new Label();
-            ga.loadLocal(localExprIndex);
+            // Lists of other types share ListWrapper, their content type name tells them apart
+            labels[types.size()] = t instanceof ListType lt && lt.primitiveList().isEmpty()
+                    ? lt.contentType().getName()
+                    : matchClass(t);
+            types.add(t);
+        }
 
-            if (t instanceof ListType lt) {
-                // Cast to ListWrapper
-                ga.instanceOf(Constants.ListWrapperType);
-                ga.visitJumpInsn(Opcodes.IFEQ, end);
-                ga.loadLocal(localExprIndex);
-                ga.checkCast(Constants.ListWrapperType);
-                ga.storeLocal(localExprIndex);
+        ga.loadLocal(localExprIndex);
+        ga.invokeDynamic("match", "(Ljava/lang/Object;)I", Constants.TypeSwitch, labels);
+        ga.tableSwitch(IntStream.range(0, types.size()).toArray(), new TableSwitchGenerator() {
+            @Override
+            public void generateCase(int index, Label end) {
+                var t = types.get(index);
+                var pair = match.cases.get(typeStmts.get(index));
 
-                // Acquire the type
+                funcType.locals.enter();
                 ga.loadLocal(localExprIndex);
-                funcType.ga.invokeVirtual(Constants.ListWrapperType, new Method("name", "()Ljava/lang/String;"));
-                // Compare content type
-                ga.push(lt.contentType().getName());
-                funcType.ga.invokeVirtual(Type.getType(String.class), new Method("equals", "(Ljava/lang/Object;)Z"));
-                ga.visitJumpInsn(Opcodes.IFEQ, end);
-                ga.loadLocal(localExprIndex);
-
-            } else {
-                // Check if match expression is this case's type
-                Type typeClass;
-                if (t instanceof BuiltInType bt) {
-                    typeClass = Type.getType(t.getTypeClass());
-                } else if (t instanceof StructType st) {
-                    typeClass = Type.getType("L" + st.qualifiedName + ";");
+                ga.checkCast(matchClass(t));
+
+                // Store the scoped local and potentially cast to primitive
+                if (t instanceof BuiltInType bt && bt.isNumeric()) {
+                    bt.unboxNoCheck(ga);
+                    int localPrimitiveType = ga.newLocal(Type.getType(bt.getDescriptor()));
+                    ga.storeLocal(localPrimitiveType);
+                    pair.getValue1().environment.lookup(pair.getValue0()).local = localPrimitiveType;
                 } else {
-                    typeClass = Type.getType(t.getDescriptor());
+                    int localObjectType = ga.newLocal(Constants.ObjectType);
+                    ga.storeLocal(localObjectType);
+                    pair.getValue1().environment.lookup(pair.getValue0()).local = localObjectType;
                 }
-                ga.instanceOf(typeClass);
-                ga.visitJumpInsn(Opcodes.IFEQ, end);
-                ga.loadLocal(localExprIndex);
-                ga.checkCast(typeClass);
-            }
 
-            // Store the scoped local and potentially cast to primitive
-            if (t instanceof BuiltInType bt && bt.isNumeric()) {
-                // if a cast is needed, override the local index
-                bt.unboxNoCheck(ga);
+                // Codegen the case body
+                currentEnvironment = pair.getValue1().environment;
+                pair.getValue1().accept(CodegenVisitor.this);
+                currentEnvironment = currentEnvironment.getParent();
+                funcType.locals.exit();
+                ga.goTo(end);
+            }
 
-                int localPrimitiveType = ga.newLocal(Type.getType(Util.convert(bt.getTypeClass())));
-                ga.storeLocal(localPrimitiveType);
-                funcType.localMap.put(scopedName, localPrimitiveType);
-            } else {
-                int localObjectType = ga.newLocal(Constants.ObjectType);
-                ga.storeLocal(localObjectType);
-                funcType.localMap.put(scopedName, localObjectType);
+            @Override
+            public void generateDefault() {
+                // A value of no case's type matches nothing
             }
+        });
+        funcType.locals.exit();
 
-            // Codegen the case body
-            currentEnvironment = block.environment;
-            block.accept(this);
-            currentEnvironment = currentEnvironment.getParent();
+        return Optional.empty();
+    }
 
-            // Mark the end of this if statement
-            ga.mark(end);
+    /**
+     * @return the class a value of type `t` has at runtime
+     */
+    private static Type matchClass(ImpType t) {
+        if (t instanceof ListType lt) {
+            return lt.primitiveList().map(Type::getType).orElse(Constants.ListWrapperType);
+        } else if (t instanceof BuiltInType) {
+            return Type.getType(t.getTypeClass());
+        } else if (t instanceof StructType st) {
+            return Type.getType("L" + st.qualifiedName + ";");
         }
+        return Type.getType(t.getDescriptor());
+    }
 
-        return Optional.empty();
+    /**
+     * A packed union carries the tag of its member, so a match on one is a single
+     * switch on that tag.
+     */
+    private void matchPacked(Stmt.Match match, UnionType union) {
+        var funcType = functionStack.peek();
+        var ga = funcType.ga;
+
+        match.expr.accept(this);
+        funcType.locals.enter();
+        int localExprIndex = ga.newLocal(Type.LONG_TYPE);
+        ga.storeLocal(localExprIndex);
+
+        var cases = new HashMap<Integer, Stmt.TypeStmt>();
+        for (var typeStmt : match.cases.keySet()) {
+            // A case for a type outside the union can never match
+            if (match.types.get(typeStmt) instanceof BuiltInType bt && union.types.contains(bt)) {
+                cases.put(UnionType.tag(bt), typeStmt);
+            }
+        }
+        int[] tags = cases.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        ga.loadLocal(localExprIndex);
+        UnionType.tag(ga);
+        ga.tableSwitch(tags, new TableSwitchGenerator() {
+            @Override
+            public void generateCase(int tag, Label end) {
+                var typeStmt = cases.get(tag);
+                var bt = (BuiltInType) match.types.get(typeStmt);
+                var pair = match.cases.get(typeStmt);
+
+                funcType.locals.enter();
+                ga.loadLocal(localExprIndex);
+                UnionType.unpack(ga, bt);
+                int local = ga.newLocal(Type.getType(bt.getDescriptor()));
+                ga.storeLocal(local);
+                pair.getValue1().environment.lookup(pair.getValue0()).local = local;
+
+                currentEnvironment = pair.getValue1().environment;
+                pair.getValue1().accept(CodegenVisitor.this);
+                currentEnvironment = currentEnvironment.getParent();
+                funcType.locals.exit();
+                ga.goTo(end);
+            }
+
+            @Override
+            public void generateDefault() {
+                // TypeCheckVisitor made sure every member has a case
+            }
+        });
+        funcType.locals.exit();
     }
 
 
@@ -647,8 +844,7 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
             ga.visitInsn(op);
             // Todo: store this
             if (expr.expr instanceof Expr.Identifier eid) {
-
-                ga.storeLocal(functionStack.peek().localMap.get(eid.identifier.source()));
+                store(ga, currentEnvironment.resolve(eid));
             }
         } else {
             Util.exit("postfix only works with builtin types", 49);
@@ -666,6 +862,10 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         if (expr.operator.type() == TokenType.SUB && t instanceof BuiltInType bt) {
             ga.visitInsn(bt.getNegOpcode());
             expr.realType = t;
+        } else if (expr.operator.type() == TokenType.NOT && t == BuiltInType.BOOLEAN) {
+            ga.push(true);
+            ga.visitInsn(Opcodes.IXOR);
+            expr.realType = t;
         }
         return Optional.empty();
     }
@@ -673,42 +873,15 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     @Override
     public Optional<ClassWriter> visitPropertyAccess(Expr.PropertyAccess expr) {
         var ga = functionStack.peek().ga;
-        var t = expr.realType;
-
-        var root = expr.expr;
-        var rootType = root.realType;
-
-        if (rootType instanceof MonomorphizedStruct mst) {
-
-            root.accept(this);
-
-            for (int i = 0; i < expr.typeChain.size() - 1; i++) {
-                var current = expr.typeChain.get(i);
-                var next = expr.typeChain.get(i + 1);
-
-                var key = ((GenericType) next).key();
-
-                var r = mst.resolved.get(key);
-
-                var fieldName = expr.identifiers.get(i).identifier.source();
-                ga.getField(Type.getType(current.getDescriptor()), fieldName, Type.getType(next.getDescriptor()));
-
-                ga.checkCast(Type.getType(r.getDescriptor()));
-
-
-            }
-        } else {
-
-            root.accept(this);
-
-            for (int i = 0; i < expr.typeChain.size() - 1; i++) {
-                var current = expr.typeChain.get(i);
-                var next = expr.typeChain.get(i + 1);
-                var fieldName = expr.identifiers.get(i).identifier.source();
-                ga.getField(Type.getType(current.getDescriptor()), fieldName, Type.getType(next.getDescriptor()));
 
+        expr.expr.accept(this);
 
-            }
+        // Instances of generic structs have fields of the resolved types, nothing to cast
+        for (int i = 0; i < expr.typeChain.size() - 1; i++) {
+            var current = expr.typeChain.get(i);
+            var next = expr.typeChain.get(i + 1);
+            var fieldName = expr.identifiers.get(i).identifier.source();
+            ga.getField(Type.getType(current.getDescriptor()), fieldName, Type.getType(next.getDescriptor()));
         }
 
         return Optional.empty();
@@ -718,34 +891,72 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
     @Override
     public Optional<ClassWriter> visitReturnStmt(Stmt.Return stmt) {
         var funcType = functionStack.peek();
-        if (!(stmt.expr instanceof Expr.Empty)) {
-            stmt.expr.accept(this);
+        if (stmt.expr instanceof Expr.Empty) {
+            funcType.ga.visitInsn(Opcodes.RETURN);
+            return Optional.empty();
+        }
 
-            // Box any primitive value that is returned by a function with UnionType result
-            if (funcType.returnType instanceof UnionType && stmt.expr.realType instanceof BuiltInType bt) {
-                bt.doBoxing(funcType.ga);
+        if (stmt.expr instanceof Expr.Call call && isSelfCall(call)) {
+            call.item.realType = funcType;
+            pushArguments(funcType, call);
+            var specialization = specialization(funcType, call);
+            // A call to the same instantiation in tail position reuses this frame:
+            // store the arguments over the parameters and jump back to the start
+            if (!funcType.hasGenerics() || specialization == funcType.currentSpecialization) {
+                for (int i = funcType.parameters.size() - 1; i >= 0; i--) {
+                    funcType.ga.storeArg(i);
+                }
+                funcType.ga.goTo(funcType.start);
+                return Optional.empty();
             }
+            invoke(funcType, specialization);
+        } else {
+            stmt.expr.accept(this);
+        }
 
-            var returnType = funcType.returnType;
-            if (returnType instanceof GenericType gt) {
-                returnType = FuncType.getSpecializedType(funcType.currentSpecialization, gt.key());
-            }
+        var returnType = specialized(funcType.returnType);
 
-            funcType.ga.visitInsn(returnType.getReturnOpcode());
-        } else {
-            funcType.ga.visitInsn(Opcodes.RETURN);
+        // Pack or box any value that is returned by a function with UnionType result
+        if (returnType instanceof UnionType ut) {
+            convert(funcType.ga, stmt.expr.realType, ut);
         }
+
+        funcType.ga.visitInsn(returnType.getReturnOpcode());
         return Optional.empty();
     }
 
+    /**
+     * @return `type` as the instantiation of the generic function being generated sees it
+     */
+    private ImpType specialized(ImpType type) {
+        var funcType = functionStack.peek();
+        return funcType.hasGenerics() ? FuncType.getSpecializedType(funcType.currentSpecialization, type) : type;
+    }
+
+    /**
+     * @return whether `call` calls the function being generated
+     */
+    private boolean isSelfCall(Expr.Call call) {
+        var funcType = functionStack.peek();
+        return call.item instanceof Expr.Identifier id && !funcType.glue
+                && currentEnvironment.getVariable(id.identifier.source()) == funcType;
+    }
+
 
     @Override
     public Optional<ClassWriter> visitStruct(Stmt.Struct struct) {
-        var innerCw = new ClassWriter(CodegenVisitor.flags);
         var structType = currentEnvironment.getVariableTyped(struct.name.source(), StructType.class);
+        var innerCw = generateStruct(structType);
+        // Every distinct set of type arguments is its own class, see StructType.instantiate
+        for (var instance : structType.instances()) generateStruct(instance);
+        return Optional.of(innerCw);
+    }
+
+    private ClassWriter generateStruct(StructType structType) {
+        var innerCw = new ClassWriter(BytecodeGenerator.flags());
 
-        String name = structType.name;
-        String innerName = source.getFullRelativePath() + "$" + name;
+        String innerName = structType.qualifiedName;
+        String name = innerName.substring(source.getFullRelativePath().length() + 1);
 
         // Create the inner class
         innerCw.visit(CodegenVisitor.CLASS_VERSION, Constants.PublicStatic, innerName, null, "java/lang/Object", null);
@@ -769,12 +980,11 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         }
 
         // Generate inner class Struct constructor
+        String ownerInternalName = innerName;
         var descriptor = "(" + constructorDescriptor + ")V";
-        MethodVisitor _mv = innerCw.visitMethod(Opcodes.ACC_PUBLIC, Constants.Init, descriptor, null, null);
+        MethodVisitor _mv = BytecodeGenerator.visitMethod(innerCw, ownerInternalName, Opcodes.ACC_PUBLIC, Constants.Init, descriptor);
         var ga = new GeneratorAdapter(_mv, Opcodes.ACC_PUBLIC, Constants.Init, descriptor);
 
-        String ownerInternalName = source.getFullRelativePath() + "$" + name;
-
         // Call super()
         ga.loadThis();
         ga.invokeConstructor(Constants.ObjectType, new Method(Constants.Init, "()V"));
@@ -796,11 +1006,11 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         ga.endMethod();
 
         // Add toString
-        BytecodeGenerator.addToString(innerCw, structType, constructorDescriptor.toString(), ownerInternalName);
+        BytecodeGenerator.addToString(innerCw, structType, ownerInternalName);
 
         structWriters.put(structType, innerCw);
 
-        return Optional.of(innerCw);
+        return innerCw;
     }
 
     @Override
@@ -823,12 +1033,10 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
         stmt.expr.accept(this);
 
         // Add another local to the function
-        var type = currentEnvironment.getVariable(stmt.identifier());
-        if (type instanceof GenericType gt) {
-            type = funcType.currentSpecialization.get(gt.key());
-        }
+        var symbol = currentEnvironment.lookup(stmt.identifier());
+        var type = specialized(symbol.type);
         stmt.localIndex = funcType.ga.newLocal(Type.getType(type.getDescriptor()));
-        funcType.localMap.put(stmt.identifier(), stmt.localIndex);
+        symbol.local = stmt.localIndex;
         funcType.ga.storeLocal(stmt.localIndex, Type.getType(type.getDescriptor()));
 
         // Postfix stuff
@@ -844,20 +1052,20 @@ public class CodegenVisitor implements IVisitor<Optional<ClassWriter>> {
 
         var funcType = functionStack.peek();
         var ga = funcType.ga;
-        Label endLabel = new Label();
-        Label startLabel = new Label();
-
-        ga.mark(startLabel);
-        // Generate condition (returns true or false)
-        w.condition.accept(this);
-
-        // if condition is true (cond == 0) do trueLabel then jump to end
+        Label bodyLabel = new Label();
+        Label conditionLabel = new Label();
+
+        // The condition is tested at the bottom of the loop, so each iteration
+        // takes one conditional jump back to the body
+        ga.goTo(conditionLabel);
+        ga.mark(bodyLabel);
+        var outer = currentEnvironment;
         currentEnvironment = w.block.environment;
-        ga.ifZCmp(GeneratorAdapter.EQ, endLabel);
         w.block.accept(this);
-        ga.goTo(startLabel);
-        ga.mark(endLabel);
-        currentEnvironment = currentEnvironment.getParent();
+        currentEnvironment = outer;
+
+        ga.mark(conditionLabel);
+        BinaryExprVisitor.branch(ga, w.condition, true, bodyLabel, this);
         return Optional.empty();
     }
 }
@@ -1,5 +1,6 @@
 package org.imp.jvm.visitors;
 
+import org.imp.jvm.Util;
 import org.imp.jvm.domain.Environment;
 import org.imp.jvm.domain.Mutability;
 import org.imp.jvm.domain.SourceFile;
@@ -30,6 +31,8 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
     public final Compiler compiler;
     final File file;
     public Environment currentEnvironment;
+    // Type names used in this file, solved once every declaration is known
+    public final TypeInference inference = new TypeInference();
 
 
     public EnvironmentVisitor(Compiler compiler, Environment rootEnvironment, SourceFile source) {
@@ -59,8 +62,8 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
         expr.right.accept(this);
 
         if (expr.left instanceof Expr.Identifier identifier) {
-            var mut = currentEnvironment.getVariableMutability(identifier.identifier.source());
-            if (mut == Mutability.Val) {
+            var symbol = currentEnvironment.resolve(identifier);
+            if (symbol != null && symbol.mutability == Mutability.Val) {
                 Comptime.MutabilityError.submit(compiler, file, identifier, identifier.identifier.source());
             }
 
@@ -123,7 +126,7 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
     @Override
     public Optional<ImpType> visitEmptyList(Expr.EmptyList emptyList) {
         var bt = BuiltInType.getFromString(emptyList.tokenType.source());
-        var lt = new ListType(bt);
+        var lt = TypeTable.intern(new ListType(bt));
         emptyList.realType = lt;
         return Optional.of(lt);
     }
@@ -191,8 +194,7 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
                     parameters.add(Pair.with(param.name.source(), t));
                 }
             } else {
-                System.err.println("pt not present");
-                System.exit(783);
+                Util.exit("pt not present", 783);
             }
         }
 
@@ -219,7 +221,8 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
 
     @Override
     public Optional<ImpType> visitIdentifierExpr(Expr.Identifier expr) {
-        return Optional.ofNullable(currentEnvironment.getVariable(expr.identifier.source()));
+        var symbol = currentEnvironment.resolve(expr);
+        return Optional.ofNullable(symbol == null ? null : symbol.type);
     }
 
     @Override
@@ -230,6 +233,8 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
         currentEnvironment = childEnvironment;
         stmt.condition.accept(this);
         stmt.trueBlock.accept(this);
+        // Declarations in an else block are added to the true block's environment
+        if (stmt.falseStmt instanceof Stmt.Block falseBlock) falseBlock.environment.setParent(childEnvironment);
         if (stmt.falseStmt != null) stmt.falseStmt.accept(this);
 
         currentEnvironment = currentEnvironment.getParent();
@@ -275,8 +280,7 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
                         this.currentEnvironment.addVariableOrError(compiler, typeName, funcType, file, stmt);
                     }
                     default -> {
-                        System.err.println("Bad deserialization.");
-                        System.exit(62);
+                        Util.exit("Bad deserialization.", 62);
                     }
                 }
             }
@@ -327,8 +331,7 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
                 ImpType t = pt.get();
                 match.types.put(keyType, t);
             } else {
-                System.err.println("pt not present");
-                System.exit(783);
+                Util.exit("pt not present", 783);
             }
             var childEnvironment = block.environment;
             childEnvironment.setParent(currentEnvironment);
@@ -393,8 +396,7 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
                 fieldTypes[i] = fieldT.get();
                 parameters.add(new Pair<>(fieldNames[i], fieldTypes[i]));
             } else {
-                System.err.println("fieldT not present");
-                System.exit(429);
+                Util.exit("fieldT not present", 429);
             }
         }
         String name = stmt.name.source();
@@ -415,12 +417,12 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
         // if no type.next exists, treat as normal type
         if (stmt.next.isEmpty()) {
             var bt = BuiltInType.getFromString(stmt.identifier.source());
-            type = Objects.requireNonNullElseGet(bt, () -> new UnknownType(stmt.identifier.source()));
+            type = Objects.requireNonNullElseGet(bt, () -> inference.named(stmt.identifier.source(), currentEnvironment));
             if (stmt.listType) {
-                type = new ListType(type);
+                type = TypeTable.intern(new ListType(type));
             }
         }
-        // if type.next exists, make an unknown type and pass to TypeCheckVisitor
+        // if type.next exists, make a type variable and solve it with the rest
         else {
             StringBuilder path = new StringBuilder(stmt.identifier.source());
             var ptr = stmt.next;
@@ -428,9 +430,9 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
                 path.append(".").append(ptr.get().identifier.source());
                 ptr = ptr.get().next;
             }
-            type = Objects.requireNonNullElse(
+            type = Objects.requireNonNullElseGet(
                     currentEnvironment.getVariableTyped(path.toString(), StructType.class),
-                    new UnknownType(path.toString())
+                    () -> inference.named(path.toString(), currentEnvironment)
             );
         }
         return Optional.of(type);
@@ -438,10 +440,10 @@ public class EnvironmentVisitor implements IVisitor<Optional<ImpType>> {
 
     @Override
     public Optional<ImpType> visitUnionType(Stmt.UnionTypeStmt unionTypeStmt) {
-        var union = new UnionType(unionTypeStmt.types.stream()
+        var union = TypeTable.intern(new UnionType(unionTypeStmt.types.stream()
                 .map(type -> type.accept(this).orElseThrow())
                 .collect(Collectors.toSet())
-        );
+        ));
         return Optional.of(union);
     }
 
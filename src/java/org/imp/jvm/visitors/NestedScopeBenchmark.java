@@ -0,0 +1,86 @@
+package org.imp.jvm.visitors;
+
+import org.imp.jvm.BytecodeGenerator;
+import org.imp.jvm.PeepholeOptimizer;
+import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.tool.Compiler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type checking and codegen of functions whose blocks nest `depth` deep, each
+ * block declaring a variable and reading every variable declared around it.
+ * Identifiers were bound to their symbols when the file was parsed, so neither
+ * pass has to walk the environment chain by name. The peephole pass is off, it
+ * scans the whole method per store and would hide the passes measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class NestedScopeBenchmark {
+	static final int FUNCTIONS = 10;
+
+	@Param({"8", "32", "96"})
+	public int depth;
+
+	private Compiler compiler;
+	private SourceFile source;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(NestedScopeBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	static String generate(int depth) {
+		var imp = new StringBuilder();
+		for (int f = 0; f < FUNCTIONS; f++) {
+			imp.append("func f%d(n int) int {\n".formatted(f));
+			imp.append("    mut total = n\n");
+			var sum = new StringBuilder("total");
+			for (int i = 0; i < depth; i++) {
+				var indent = "    ".repeat(i + 1);
+				imp.append(indent).append("val v%d = n + %d\n".formatted(i, i));
+				sum.append(" + v").append(i);
+				imp.append(indent).append("total = ").append(sum).append('\n');
+				imp.append(indent).append("if total > v%d {\n".formatted(i));
+			}
+			for (int i = depth; i > 0; i--) {
+				imp.append("    ".repeat(i)).append("}\n");
+			}
+			imp.append("    return total\n}\n");
+			imp.append("log(f%d(1))\n".formatted(f));
+		}
+		return imp.toString();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		PeepholeOptimizer.ENABLED = false;
+
+		var root = Files.createTempDirectory("imp-scopes");
+		Files.writeString(root.resolve("nested.imp"), generate(depth));
+
+		compiler = new Compiler();
+		source = compiler.parse(root.toString(), "", "nested");
+		typeCheckAndGenerate();
+		if (!compiler.errorData().isEmpty()) throw new IllegalStateException(compiler.errorData().toString());
+	}
+
+	@Benchmark
+	public int typeCheckAndGenerate() {
+		source.acceptVisitor(new TypeCheckVisitor(compiler, source.rootEnvironment, source));
+		var classes = new BytecodeGenerator().generate(compiler, source);
+		return classes.getValue0().toByteArray().length;
+	}
+}
@@ -0,0 +1,880 @@
+package org.imp.jvm.visitors;
+
+import org.imp.jvm.domain.Environment;
+import org.imp.jvm.domain.Mutability;
+import org.imp.jvm.parser.Expr;
+import org.imp.jvm.parser.Node;
+import org.imp.jvm.parser.Stmt;
+import org.imp.jvm.parser.tokenizer.Token;
+import org.imp.jvm.parser.tokenizer.TokenType;
+import org.imp.jvm.types.BuiltInType;
+import org.imp.jvm.types.FuncType;
+import org.imp.jvm.types.ImpType;
+import org.imp.jvm.types.ListType;
+import org.imp.jvm.types.StructType;
+import org.imp.jvm.types.TypeResolver;
+import org.javatuples.Pair;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Constant folding, propagation and inlining over a type checked AST, run
+ * between type checking and codegen.
+ * <ol>
+ *     <li>Arithmetic, equality, logical and string operations on literals are
+ *     replaced by their result.</li>
+ *     <li>Uses of a `val` initialized with a constant are replaced by the constant.</li>
+ *     <li>`if` and `while` statements with a constant condition lose their dead branch.</li>
+ *     <li>Calls to small functions of the module whose body is a single `return`
+ *     are replaced by that expression, with the arguments in place of the
+ *     parameters. Generic functions and functions on a cycle of the call graph
+ *     are never inlined.</li>
+ * </ol>
+ * Nodes are immutable, so every visit returns the node that replaces the visited
+ * one. Statements return empty when they are removed.
+ */
+public class OptimizerVisitor implements IVisitor<Optional<Node>> {
+    /**
+     * Change OptimizerVisitor.ENABLED to `false` to compile the AST as written
+     */
+    public static boolean ENABLED = true;
+
+    /**
+     * Number of AST nodes removed so far.
+     */
+    public int removed = 0;
+
+    /**
+     * Number of calls inlined so far, by function.
+     */
+    public final Map<FuncType, Integer> inlined = new LinkedHashMap<>();
+
+    // Largest return expression inlined, in AST nodes
+    private static final int INLINE_SIZE = 16;
+
+    /**
+     * A function that can be inlined.
+     *
+     * @param body    the expression it returns
+     * @param uses    number of uses of each parameter in `body`
+     * @param callees type of every name called in `body`, which must mean the same at the call site
+     */
+    private record Inlinable(Expr body, Map<String, Integer> uses, Map<String, ImpType> callees) {
+    }
+
+    private final Map<FuncType, Inlinable> inlinable = new HashMap<>();
+
+    // Environment of the block being visited, call sites look callees up in it
+    private final Deque<Environment> environments = new ArrayDeque<>();
+
+    // `val` name -> constant, null where a name is declared but not constant
+    private Deque<Map<String, Expr.Literal>> constants = new ArrayDeque<>();
+
+    // Names changed by `++` or `--`, which is allowed on a `val`
+    private final Set<String> mutated = new HashSet<>();
+
+    public OptimizerVisitor(Environment rootEnvironment) {
+        constants.push(new HashMap<>());
+        environments.push(rootEnvironment);
+    }
+
+    /**
+     * Optimize top level statements in place.
+     */
+    public void optimize(List<Stmt> stmts) {
+        var functions = new LinkedHashMap<FuncType, Stmt.Function>();
+        for (var stmt : stmts) {
+            NodeWalker.walk(stmt, node -> {
+                if (node instanceof Expr.Postfix p && p.expr instanceof Expr.Identifier id) {
+                    mutated.add(id.identifier.source());
+                }
+                if (node instanceof Stmt.Function f && f.body.environment.getParent() != null) {
+                    var funcType = f.body.environment.getParent().getVariableTyped(f.name.source(), FuncType.class);
+                    if (funcType != null) functions.put(funcType, f);
+                }
+            });
+        }
+        findInlinable(functions);
+        var result = statements(stmts);
+        stmts.clear();
+        stmts.addAll(result);
+    }
+
+    private List<Stmt> statements(List<Stmt> stmts) {
+        var result = new ArrayList<Stmt>();
+        for (var stmt : stmts) {
+            stmt.accept(this).ifPresent(s -> result.add((Stmt) s));
+        }
+        return result;
+    }
+
+    private Expr expr(Expr expr) {
+        return (Expr) expr.accept(this).orElseThrow();
+    }
+
+    private Stmt.Block block(Stmt.Block block) {
+        return (Stmt.Block) block.accept(this).orElseThrow();
+    }
+
+    private Optional<Expr.Literal> lookup(String name) {
+        for (var scope : constants) {
+            if (scope.containsKey(name)) return Optional.ofNullable(scope.get(name));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Visit `block` with `names` declared in a scope around it, e.g. loop variables.
+     */
+    private Stmt.Block blockDeclaring(Stmt.Block block, String... names) {
+        var scope = new HashMap<String, Expr.Literal>();
+        for (var name : names) scope.put(name, null);
+        constants.push(scope);
+        var result = block(block);
+        constants.pop();
+        return result;
+    }
+
+    private static <T extends Expr> T typed(T expr, Expr original) {
+        expr.realType = original.realType;
+        return expr;
+    }
+
+    private static BuiltInType type(Expr.Literal literal) {
+        return BuiltInType.getFromToken(literal.literal.type());
+    }
+
+    private static Object value(Expr.Literal literal) {
+        return TypeResolver.getValueFromString(literal.literal.source(), type(literal));
+    }
+
+    private static Expr.Literal literal(Expr at, BuiltInType type, Object value) {
+        var tokenType = switch (type) {
+            case BOOLEAN -> (boolean) value ? TokenType.TRUE : TokenType.FALSE;
+            case INT -> TokenType.INT;
+            case FLOAT -> TokenType.FLOAT;
+            case DOUBLE -> TokenType.DOUBLE;
+            case STRING -> TokenType.STRING;
+            default -> throw new IllegalStateException("Unexpected value: " + type);
+        };
+        var token = new Token(tokenType, at.location.line(), at.location.col(), String.valueOf(value));
+        var literal = new Expr.Literal(at.location, token);
+        literal.realType = type;
+        return literal;
+    }
+
+    /**
+     * @return the value of `left operator right`, empty if it must be left to runtime
+     */
+    private static Optional<Object> fold(TokenType operator, BuiltInType resultType, Expr.Literal left, Expr.Literal right) {
+        var lType = type(left);
+        var rType = type(right);
+        var l = value(left);
+        var r = value(right);
+
+        switch (operator) {
+            case ADD, SUB, MUL, DIV, MOD -> {
+                if (resultType == BuiltInType.STRING) {
+                    if (operator != TokenType.ADD) return Optional.empty();
+                    String s = String.valueOf(l) + r;
+                    // String literal sources may not start or end with quotes, see TypeResolver
+                    if (s.startsWith("\"") || s.endsWith("\"")) return Optional.empty();
+                    return Optional.of(s);
+                }
+                if (!lType.isNumeric() || !rType.isNumeric()) return Optional.empty();
+                return arithmetic(operator, resultType, (Number) l, (Number) r);
+            }
+            case EQUAL, NOTEQUAL -> {
+                // `<`, `>`, `<=` and `>=` are left to BinaryExprVisitor.relational so
+                // folding never changes what a comparison evaluates to
+                boolean equal;
+                if (lType.isNumeric() && rType.isNumeric()) {
+                    var a = (Number) l;
+                    var b = (Number) r;
+                    if (Double.isNaN(a.doubleValue()) || Double.isNaN(b.doubleValue())) return Optional.empty();
+                    equal = switch (BuiltInType.widen(lType, rType)) {
+                        case INT -> a.intValue() == b.intValue();
+                        case FLOAT -> a.floatValue() == b.floatValue();
+                        default -> a.doubleValue() == b.doubleValue();
+                    };
+                } else if (lType == rType) {
+                    equal = l.equals(r);
+                } else {
+                    return Optional.empty();
+                }
+                return Optional.of(operator == TokenType.EQUAL ? equal : !equal);
+            }
+            case AND, OR, XOR -> {
+                if (!(l instanceof Boolean a) || !(r instanceof Boolean b)) return Optional.empty();
+                return Optional.of(switch (operator) {
+                    case AND -> a && b;
+                    case OR -> a || b;
+                    default -> a ^ b;
+                });
+            }
+            default -> {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static Optional<Object> arithmetic(TokenType operator, BuiltInType resultType, Number l, Number r) {
+        switch (resultType) {
+            case INT -> {
+                int a = l.intValue();
+                int b = r.intValue();
+                // Leave division by zero to throw at runtime
+                if ((operator == TokenType.DIV || operator == TokenType.MOD) && b == 0) return Optional.empty();
+                return Optional.of(switch (operator) {
+                    case ADD -> a + b;
+                    case SUB -> a - b;
+                    case MUL -> a * b;
+                    case DIV -> a / b;
+                    default -> a % b;
+                });
+            }
+            case FLOAT -> {
+                float a = l.floatValue();
+                float b = r.floatValue();
+                return Optional.of(switch (operator) {
+                    case ADD -> a + b;
+                    case SUB -> a - b;
+                    case MUL -> a * b;
+                    case DIV -> a / b;
+                    default -> a % b;
+                });
+            }
+            case DOUBLE -> {
+                double a = l.doubleValue();
+                double b = r.doubleValue();
+                return Optional.of(switch (operator) {
+                    case ADD -> a + b;
+                    case SUB -> a - b;
+                    case MUL -> a * b;
+                    case DIV -> a / b;
+                    default -> a % b;
+                });
+            }
+            default -> {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Pick the functions small enough to inline, leaving out any function that
+     * can reach itself through the calls in the bodies of `functions`.
+     */
+    private void findInlinable(Map<FuncType, Stmt.Function> functions) {
+        var calls = new HashMap<FuncType, Set<FuncType>>();
+        functions.forEach((funcType, function) -> {
+            var callees = new HashSet<FuncType>();
+            NodeWalker.walk(function.body, node -> {
+                if (node instanceof Expr.Call call && call.item instanceof Expr.Identifier id
+                        && function.body.environment.getVariable(id.identifier.source()) instanceof FuncType callee) {
+                    callees.add(callee);
+                }
+            });
+            calls.put(funcType, callees);
+        });
+
+        functions.forEach((funcType, function) -> {
+            if (reaches(calls, funcType, funcType, new HashSet<>())) return;
+            inlinable(funcType, function).ifPresent(i -> inlinable.put(funcType, i));
+        });
+    }
+
+    private static boolean reaches(Map<FuncType, Set<FuncType>> calls, FuncType from, FuncType to, Set<FuncType> seen) {
+        for (var callee : calls.getOrDefault(from, Set.of())) {
+            if (callee == to) return true;
+            if (seen.add(callee) && reaches(calls, callee, to, seen)) return true;
+        }
+        return false;
+    }
+
+    private static Optional<Inlinable> inlinable(FuncType funcType, Stmt.Function function) {
+        if (funcType.glue || funcType.hasGenerics()) return Optional.empty();
+        if (function.body.statements.size() != 1 || !(function.body.statements.get(0) instanceof Stmt.Return ret)) {
+            return Optional.empty();
+        }
+        var body = ret.expr;
+        if (body instanceof Expr.Empty || body.realType != funcType.returnType || !inlinableType(funcType.returnType)) {
+            return Optional.empty();
+        }
+        if (!funcType.parameters.stream().allMatch(p -> inlinableType(p.getValue1()))) return Optional.empty();
+
+        var parameters = funcType.parameters.stream().map(Pair::getValue0).collect(Collectors.toSet());
+        var uses = new HashMap<String, Integer>();
+        parameters.forEach(p -> uses.put(p, 0));
+        var callees = new HashMap<String, ImpType>();
+        var items = Collections.newSetFromMap(new IdentityHashMap<Expr, Boolean>());
+        var inlinable = new boolean[]{true};
+        int size = NodeWalker.walk(body, node -> {
+            if (node instanceof Expr.Call call) {
+                var name = call.item instanceof Expr.Identifier id ? id.identifier.source() : null;
+                var type = name == null ? null : function.body.environment.getVariable(name);
+                // A call by name to a non-generic function or struct constructor, FuncType extends StructType
+                if (type instanceof StructType callee && !callee.hasGenerics() && !parameters.contains(name)) {
+                    callees.put(name, callee);
+                    items.add(call.item);
+                } else {
+                    inlinable[0] = false;
+                }
+            } else if (node instanceof Expr.Identifier id) {
+                var name = id.identifier.source();
+                if (parameters.contains(name)) {
+                    uses.merge(name, 1, Integer::sum);
+                } else if (!items.contains(id)) {
+                    inlinable[0] = false;
+                }
+            } else if (!(node instanceof Expr.Literal || node instanceof Expr.Binary || node instanceof Expr.Prefix
+                    || node instanceof Expr.Grouping || node instanceof Expr.PropertyAccess)) {
+                inlinable[0] = false;
+            }
+        });
+        if (!inlinable[0] || size > INLINE_SIZE) return Optional.empty();
+        return Optional.of(new Inlinable(body, uses, callees));
+    }
+
+    // Types that arguments are passed as without a conversion
+    private static boolean inlinableType(ImpType type) {
+        if (type instanceof BuiltInType bt) return bt != BuiltInType.VOID;
+        if (type instanceof FuncType) return false;
+        if (type instanceof StructType st) return !st.hasGenerics();
+        return type instanceof ListType;
+    }
+
+    /**
+     * @return the body of the function called by `call` with `arguments` in
+     * place of its parameters, empty if the call has to stay
+     */
+    private Optional<Expr> inline(Expr.Call call, List<Expr> arguments) {
+        if (!(call.item instanceof Expr.Identifier id) || environments.peek() == null) return Optional.empty();
+        var environment = environments.peek();
+        if (!(environment.getVariable(id.identifier.source()) instanceof FuncType funcType)) return Optional.empty();
+        var function = inlinable.get(funcType);
+        if (function == null || arguments.size() != funcType.parameters.size()) return Optional.empty();
+
+        // Substituted arguments are read where the body uses them, after any function it calls.
+        // A function can change a field or a `mut` variable, so arguments reading one must
+        // stay evaluated before the call.
+        boolean callsFunction = function.callees.values().stream().anyMatch(t -> t instanceof FuncType);
+        var substitutions = new HashMap<String, Expr>();
+        for (int i = 0; i < arguments.size(); i++) {
+            var name = funcType.parameters.get(i).getValue0();
+            var argument = arguments.get(i);
+            if (argument.realType != funcType.parameters.get(i).getValue1()) return Optional.empty();
+            // Anything but a literal, a name or a field of a name is evaluated exactly once, like it would be by the call
+            boolean simple = argument instanceof Expr.Literal || argument instanceof Expr.Identifier
+                    || argument instanceof Expr.PropertyAccess p && p.expr instanceof Expr.Identifier;
+            if (!simple && (function.uses.get(name) != 1 || !pure(argument))) return Optional.empty();
+            if (callsFunction && readsMutable(argument, environment)) return Optional.empty();
+            substitutions.put(name, argument);
+        }
+        for (var callee : function.callees.entrySet()) {
+            if (environment.getVariable(callee.getKey()) != callee.getValue()) return Optional.empty();
+        }
+
+        inlined.merge(funcType, 1, Integer::sum);
+        return Optional.of(typed(new Expr.Grouping(call.location, substitute(function.body, substitutions)), call));
+    }
+
+    private static boolean pure(Expr expr) {
+        var pure = new boolean[]{true};
+        NodeWalker.walk(expr, node -> {
+            if (node instanceof Expr.Call || node instanceof Expr.Assign || node instanceof Expr.Postfix) pure[0] = false;
+        });
+        return pure[0];
+    }
+
+    // Whether `expr` reads a field or a variable that can change after it is declared
+    private boolean readsMutable(Expr expr, Environment environment) {
+        var reads = new boolean[]{false};
+        NodeWalker.walk(expr, node -> {
+            if (node instanceof Expr.PropertyAccess) {
+                reads[0] = true;
+            } else if (node instanceof Expr.Identifier id) {
+                var name = id.identifier.source();
+                if (environment.getVariableMutability(name) == Mutability.Mut || mutated.contains(name)) reads[0] = true;
+            }
+        });
+        return reads[0];
+    }
+
+    private static Expr substitute(Expr expr, Map<String, Expr> substitutions) {
+        return switch (expr) {
+            case Expr.Identifier id -> substitutions.getOrDefault(id.identifier.source(), id);
+            case Expr.Binary b -> typed(new Expr.Binary(b.location, substitute(b.left, substitutions), b.operator,
+                    substitute(b.right, substitutions)), b);
+            case Expr.Prefix p -> typed(new Expr.Prefix(p.location, p.operator, substitute(p.right, substitutions)), p);
+            case Expr.Grouping g -> typed(new Expr.Grouping(g.location, substitute(g.expr, substitutions)), g);
+            case Expr.PropertyAccess p -> {
+                var access = typed(new Expr.PropertyAccess(p.location, substitute(p.expr, substitutions), p.identifiers), p);
+                access.typeChain = p.typeChain;
+                yield access;
+            }
+            case Expr.Call c -> typed(new Expr.Call(c.location, c.item,
+                    c.arguments.stream().map(a -> substitute(a, substitutions)).toList()), c);
+            default -> expr;
+        };
+    }
+
+    @Override
+    public Optional<Node> visit(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    @Override
+    public Optional<Node> visitAlias(Stmt.Alias stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitAssignExpr(Expr.Assign expr) {
+        // The recipient is never replaced
+        var right = expr(expr.right);
+        if (right == expr.right) return Optional.of(expr);
+        return Optional.of(typed(new Expr.Assign(expr.location, expr.left, right), expr));
+    }
+
+    @Override
+    public Optional<Node> visitBad(Expr.Bad expr) {
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitBinaryExpr(Expr.Binary expr) {
+        var left = expr(expr.left);
+        var right = expr(expr.right);
+        var operator = expr.operator.type();
+
+        if (left instanceof Expr.Literal l && right instanceof Expr.Literal r && expr.realType instanceof BuiltInType bt) {
+            var folded = fold(operator, bt, l, r);
+            if (folded.isPresent()) {
+                removed += 2;
+                return Optional.of(literal(expr, bt, folded.get()));
+            }
+        }
+
+        // `true && x` is `x` and `false && x` is `false`, the same goes for `||`
+        if (left instanceof Expr.Literal l && (operator == TokenType.AND || operator == TokenType.OR)
+                && value(l) instanceof Boolean b) {
+            if (b == (operator == TokenType.AND)) {
+                removed += 2;
+                return Optional.of(right);
+            }
+            removed += 1 + NodeWalker.count(right);
+            return Optional.of(l);
+        }
+
+        if (left == expr.left && right == expr.right) return Optional.of(expr);
+        return Optional.of(typed(new Expr.Binary(expr.location, left, expr.operator, right), expr));
+    }
+
+    @Override
+    public Optional<Node> visitBlockStmt(Stmt.Block block) {
+        constants.push(new HashMap<>());
+        environments.push(block.environment);
+        var statements = statements(block.statements);
+        environments.pop();
+        constants.pop();
+        return Optional.of(new Stmt.Block(block.location, statements, block.environment));
+    }
+
+    @Override
+    public Optional<Node> visitCall(Expr.Call expr) {
+        var arguments = expr.arguments.stream().map(this::expr).toList();
+        // The inlined body is optimized again, folding constant arguments into it
+        var inlined = inline(expr, arguments);
+        if (inlined.isPresent()) return Optional.of(expr(inlined.get()));
+        return Optional.of(typed(new Expr.Call(expr.location, expr.item, arguments), expr));
+    }
+
+    @Override
+    public Optional<Node> visitEmpty(Expr.Empty empty) {
+        return Optional.of(empty);
+    }
+
+    @Override
+    public Optional<Node> visitEmptyList(Expr.EmptyList emptyList) {
+        return Optional.of(emptyList);
+    }
+
+    @Override
+    public Optional<Node> visitEnum(Stmt.Enum stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitExport(Stmt.Export stmt) {
+        return stmt.stmt.accept(this).map(s -> new Stmt.Export(stmt.location, (Stmt) s));
+    }
+
+    @Override
+    public Optional<Node> visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+        return Optional.of(new Stmt.ExpressionStmt(stmt.location, expr(stmt.expr)));
+    }
+
+    @Override
+    public Optional<Node> visitFor(Stmt.For stmt) {
+        var expr = expr(stmt.expr);
+        var block = blockDeclaring(stmt.block, stmt.name.source());
+        return Optional.of(new Stmt.For(stmt.location, stmt.name, expr, block));
+    }
+
+    @Override
+    public Optional<Node> visitFunctionStmt(Stmt.Function stmt) {
+        // Functions cannot see the locals of the function they are declared in
+        var outer = constants;
+        constants = new ArrayDeque<>();
+        var body = blockDeclaring(stmt.body, stmt.parameters.stream().map(p -> p.name.source()).toArray(String[]::new));
+        constants = outer;
+        return Optional.of(new Stmt.Function(stmt.location, stmt.name, stmt.parameters, stmt.returnType, body, stmt.generics));
+    }
+
+    @Override
+    public Optional<Node> visitGroupingExpr(Expr.Grouping expr) {
+        var inner = expr(expr.expr);
+        if (inner instanceof Expr.Literal) {
+            removed++;
+            return Optional.of(inner);
+        }
+        if (inner == expr.expr) return Optional.of(expr);
+        return Optional.of(typed(new Expr.Grouping(expr.location, inner), expr));
+    }
+
+    @Override
+    public Optional<Node> visitIdentifierExpr(Expr.Identifier expr) {
+        var constant = lookup(expr.identifier.source());
+        if (constant.isPresent()) {
+            var literal = constant.get();
+            return Optional.of(literal(expr, type(literal), value(literal)));
+        }
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitIf(Stmt.If stmt) {
+        var condition = expr(stmt.condition);
+        if (condition instanceof Expr.Literal l && value(l) instanceof Boolean b) {
+            if (b) {
+                removed += 2 + (stmt.falseStmt == null ? 0 : NodeWalker.count(stmt.falseStmt));
+                return Optional.of(block(stmt.trueBlock));
+            }
+            removed += 2 + NodeWalker.count(stmt.trueBlock);
+            if (stmt.falseStmt == null) return Optional.empty();
+            return stmt.falseStmt.accept(this);
+        }
+
+        var trueBlock = block(stmt.trueBlock);
+        Stmt falseStmt = null;
+        if (stmt.falseStmt != null) falseStmt = (Stmt) stmt.falseStmt.accept(this).orElse(null);
+        return Optional.of(new Stmt.If(stmt.location, condition, trueBlock, falseStmt));
+    }
+
+    @Override
+    public Optional<Node> visitImport(Stmt.Import stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitIndexAccess(Expr.IndexAccess expr) {
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitLiteralExpr(Expr.Literal expr) {
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitLiteralList(Expr.LiteralList expr) {
+        var entries = expr.entries.stream().map(this::expr).toList();
+        return Optional.of(typed(new Expr.LiteralList(expr.location, entries), expr));
+    }
+
+    @Override
+    public Optional<Node> visitMatch(Stmt.Match match) {
+        var expr = expr(match.expr);
+        var cases = new LinkedHashMap<Stmt.TypeStmt, Pair<String, Stmt.Block>>();
+        for (var c : match.cases.entrySet()) {
+            var id = c.getValue().getValue0();
+            cases.put(c.getKey(), Pair.with(id, blockDeclaring(c.getValue().getValue1(), id)));
+        }
+        var result = new Stmt.Match(match.location, expr, cases);
+        result.types.putAll(match.types);
+        return Optional.of(result);
+    }
+
+    @Override
+    public Optional<Node> visitParameterStmt(Stmt.Parameter stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitPostfixExpr(Expr.Postfix expr) {
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitPrefix(Expr.Prefix expr) {
+        var right = expr(expr.right);
+        if (expr.operator.type() == TokenType.SUB && right instanceof Expr.Literal l && type(l).isNumeric()) {
+            removed++;
+            return Optional.of(switch (type(l)) {
+                case INT -> literal(expr, BuiltInType.INT, -(int) value(l));
+                case FLOAT -> literal(expr, BuiltInType.FLOAT, -(float) value(l));
+                default -> literal(expr, BuiltInType.DOUBLE, -(double) value(l));
+            });
+        }
+        if (expr.operator.type() == TokenType.NOT && right instanceof Expr.Literal l && value(l) instanceof Boolean b) {
+            removed++;
+            return Optional.of(literal(expr, BuiltInType.BOOLEAN, !b));
+        }
+        if (right == expr.right) return Optional.of(expr);
+        return Optional.of(typed(new Expr.Prefix(expr.location, expr.operator, right), expr));
+    }
+
+    @Override
+    public Optional<Node> visitPropertyAccess(Expr.PropertyAccess expr) {
+        return Optional.of(expr);
+    }
+
+    @Override
+    public Optional<Node> visitReturnStmt(Stmt.Return stmt) {
+        return Optional.of(new Stmt.Return(stmt.location, expr(stmt.expr)));
+    }
+
+    @Override
+    public Optional<Node> visitStruct(Stmt.Struct stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitType(Stmt.TypeStmt stmt) {
+        return Optional.of(stmt);
+    }
+
+    @Override
+    public Optional<Node> visitUnionType(Stmt.UnionTypeStmt unionTypeStmt) {
+        return Optional.of(unionTypeStmt);
+    }
+
+    @Override
+    public Optional<Node> visitVariable(Stmt.Variable stmt) {
+        var expr = expr(stmt.expr);
+        var name = stmt.identifier();
+        if (stmt.mutability.type() == TokenType.VAL && expr instanceof Expr.Literal l && !mutated.contains(name)) {
+            constants.peek().put(name, l);
+        } else {
+            constants.peek().put(name, null);
+        }
+        return Optional.of(new Stmt.Variable(stmt.location, stmt.mutability, stmt.name, expr));
+    }
+
+    @Override
+    public Optional<Node> visitWhile(Stmt.While aWhile) {
+        var condition = expr(aWhile.condition);
+        if (condition instanceof Expr.Literal l && Boolean.FALSE.equals(value(l))) {
+            removed += 2 + NodeWalker.count(aWhile.block);
+            return Optional.empty();
+        }
+        return Optional.of(new Stmt.While(aWhile.location, condition, block(aWhile.block)));
+    }
+
+    /**
+     * Visits every node of a subtree as it is, e.g. to count a subtree that is
+     * removed without being optimized.
+     */
+    private static class NodeWalker implements IVisitor<Integer> {
+        private final Consumer<Node> action;
+
+        private NodeWalker(Consumer<Node> action) {
+            this.action = action;
+        }
+
+        /**
+         * @return the number of nodes visited
+         */
+        static int walk(Node node, Consumer<Node> action) {
+            return new NodeWalker(action).walk(node);
+        }
+
+        static int count(Node node) {
+            return walk(node, n -> {
+            });
+        }
+
+        private int walk(Node node) {
+            action.accept(node);
+            if (node instanceof Expr e) return e.accept(this);
+            return ((Stmt) node).accept(this);
+        }
+
+        private int sum(List<? extends Node> nodes) {
+            return nodes.stream().mapToInt(this::walk).sum();
+        }
+
+        @Override
+        public Integer visit(Stmt stmt) {
+            return stmt.accept(this);
+        }
+
+        @Override
+        public Integer visitAlias(Stmt.Alias stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return 1 + walk(expr.left) + walk(expr.right);
+        }
+
+        @Override
+        public Integer visitBad(Expr.Bad expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return 1 + walk(expr.left) + walk(expr.right);
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            return 1 + sum(stmt.statements);
+        }
+
+        @Override
+        public Integer visitCall(Expr.Call expr) {
+            return 1 + walk(expr.item) + sum(expr.arguments);
+        }
+
+        @Override
+        public Integer visitEmpty(Expr.Empty empty) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitEmptyList(Expr.EmptyList emptyList) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitEnum(Stmt.Enum stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitExport(Stmt.Export stmt) {
+            return 1 + walk(stmt.stmt);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.ExpressionStmt stmt) {
+            return 1 + walk(stmt.expr);
+        }
+
+        @Override
+        public Integer visitFor(Stmt.For stmt) {
+            return 1 + walk(stmt.expr) + walk(stmt.block);
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            return 1 + walk(stmt.body);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return 1 + walk(expr.expr);
+        }
+
+        @Override
+        public Integer visitIdentifierExpr(Expr.Identifier expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitIf(Stmt.If stmt) {
+            return 1 + walk(stmt.condition) + walk(stmt.trueBlock) + (stmt.falseStmt == null ? 0 : walk(stmt.falseStmt));
+        }
+
+        @Override
+        public Integer visitImport(Stmt.Import stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitIndexAccess(Expr.IndexAccess expr) {
+            return 1 + walk(expr.left) + walk(expr.right);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitLiteralList(Expr.LiteralList expr) {
+            return 1 + sum(expr.entries);
+        }
+
+        @Override
+        public Integer visitMatch(Stmt.Match match) {
+            return 1 + walk(match.expr) + match.cases.values().stream().mapToInt(c -> walk(c.getValue1())).sum();
+        }
+
+        @Override
+        public Integer visitParameterStmt(Stmt.Parameter stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitPostfixExpr(Expr.Postfix expr) {
+            return 1 + walk(expr.expr);
+        }
+
+        @Override
+        public Integer visitPrefix(Expr.Prefix expr) {
+            return 1 + walk(expr.right);
+        }
+
+        @Override
+        public Integer visitPropertyAccess(Expr.PropertyAccess expr) {
+            return 1 + walk(expr.expr) + expr.identifiers.size();
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            return 1 + walk(stmt.expr);
+        }
+
+        @Override
+        public Integer visitStruct(Stmt.Struct stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitType(Stmt.TypeStmt stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitUnionType(Stmt.UnionTypeStmt unionTypeStmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitVariable(Stmt.Variable stmt) {
+            return 1 + walk(stmt.expr);
+        }
+
+        @Override
+        public Integer visitWhile(Stmt.While aWhile) {
+            return 1 + walk(aWhile.condition) + walk(aWhile.block);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.imp.jvm.visitors;
+
+import org.imp.runtime.Batteries;
+import org.imp.runtime.IntList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the loop shapes CodegenVisitor.visitFor emits, written out in Java:
+ * iterating `range()` through a boxed Iterator against the counted int loop,
+ * and the same for iterating an `int[]`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class RangeLoopBenchmark {
+
+	@Param({"1000", "1000000"})
+	public int size;
+
+	private IntList list;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(RangeLoopBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		list = new IntList(size);
+		for (int i = 0; i < size; i++) list.push(i);
+	}
+
+	/**
+	 * `for i in range(0, size)` through Iterator.hasNext/next and unboxing.
+	 */
+	@Benchmark
+	public int rangeIterator() {
+		int sum = 0;
+		Iterator<Integer> iterator = Batteries.range(0, size);
+		while (iterator.hasNext()) {
+			int i = iterator.next();
+			sum += i;
+		}
+		return sum;
+	}
+
+	/**
+	 * `for i in range(0, size)` as a counted loop.
+	 */
+	@Benchmark
+	public int rangeCounted() {
+		int sum = 0;
+		for (int counter = 0, limit = size; counter < limit; counter++) {
+			int i = counter;
+			sum += i;
+		}
+		return sum;
+	}
+
+	/**
+	 * `for x in list` through the List iterator, unboxing every element.
+	 */
+	@Benchmark
+	public int listIterator() {
+		int sum = 0;
+		Iterator<Integer> iterator = list.iterator();
+		while (iterator.hasNext()) {
+			int x = iterator.next();
+			sum += x;
+		}
+		return sum;
+	}
+
+	/**
+	 * `for x in list` as a counted loop over IntList.at.
+	 */
+	@Benchmark
+	public int listCounted() {
+		int sum = 0;
+		for (int counter = 0, limit = list.size(); counter < limit; counter++) {
+			int x = list.at(counter);
+			sum += x;
+		}
+		return sum;
+	}
+}
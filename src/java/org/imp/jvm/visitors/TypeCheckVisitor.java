@@ -5,17 +5,23 @@ import org.imp.jvm.domain.Environment;
 import org.imp.jvm.domain.SourceFile;
 import org.imp.jvm.errors.Comptime;
 import org.imp.jvm.parser.Expr;
+import org.imp.jvm.parser.Node;
 import org.imp.jvm.parser.Stmt;
 import org.imp.jvm.parser.tokenizer.Location;
 import org.imp.jvm.parser.tokenizer.TokenType;
 import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.Glue;
 import org.imp.jvm.types.*;
 import org.javatuples.Pair;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
 
@@ -25,6 +31,8 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
     public final File file;
     public final Compiler compiler;
     private final Stack<FuncType> functionStack = new Stack<>();
+    // Generic functions called so far, see FuncType.specializations
+    public final Set<FuncType> specialized = new LinkedHashSet<>();
     public Environment currentEnvironment;
 
     public TypeCheckVisitor(Compiler compiler, Environment rootEnvironment, SourceFile source) {
@@ -44,11 +52,11 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
     public Optional<ImpType> visitAlias(Stmt.Alias stmt) {
         var a = currentEnvironment.getVariable(stmt.identifier.source());
 
-        var resolvedTypes = new HashSet<ImpType>();
         if (a instanceof UnionType ut) {
-            extractedMethodForUnions(resolvedTypes, ut, stmt);
+            var union = TypeInference.resolve(ut);
+            reportUnresolved(union, stmt);
 
-            currentEnvironment.setVariableType(stmt.identifier(), ut);
+            currentEnvironment.setVariableType(stmt.identifier(), union);
         }
 
         return Optional.empty();
@@ -103,7 +111,11 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
 
         switch (expr.operator.type()) {
             case ADD, SUB, MUL, DIV, MOD -> {
-                if (t1.get() instanceof BuiltInType bt1 && t2.get() instanceof BuiltInType bt2) {
+                if (expr.operator.type() == TokenType.ADD && (t1.get() == BuiltInType.STRING || t2.get() == BuiltInType.STRING)
+                        && concatenable(t1.get()) && concatenable(t2.get())) {
+                    totalType = BuiltInType.STRING;
+                } else if (t1.get() instanceof BuiltInType bt1 && BuiltInType.widenings.containsKey(bt1)
+                        && t2.get() instanceof BuiltInType bt2 && BuiltInType.widenings.containsKey(bt2)) {
                     totalType = BuiltInType.widen(bt1, bt2);
                 } else {
                     Comptime.CannotApplyOperator.submit(compiler, file, expr, expr.operator.source(), t1.get(), t2.get());
@@ -145,6 +157,15 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
         return Optional.of(totalType);
     }
 
+    /**
+     * Operands a string can be added to. Builtins and structs are converted with
+     * String.valueOf, see BinaryExprVisitor.concatenateStrings.
+     */
+    private static boolean concatenable(ImpType type) {
+        if (type instanceof BuiltInType bt) return bt != BuiltInType.VOID && bt != BuiltInType.ANY;
+        return type instanceof StructType && !(type instanceof FuncType);
+    }
+
     @Override
     public Optional<ImpType> visitBlockStmt(Stmt.Block block) {
         for (var stmt : block.statements) {
@@ -183,13 +204,13 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
             var rt = ft.returnType;
             if (ft.hasGenerics()) {
 
-                var specialization = ft.buildSpecialization(expr.arguments);
-
-                ft.specializations.add(specialization);
+                var specialization = ft.specialize(expr.arguments);
+                specialized.add(ft);
 
-                if (rt instanceof GenericType gt) {
-                    rt = specialization.get(gt.key());
-                }
+                rt = FuncType.getSpecializedType(specialization, rt);
+            } else if (ft.glue) {
+                // Lists of builtin types call the unboxed overload, e.g. at(int[], int) returns int
+                rt = Glue.specialize(ft, expr.arguments.stream().map(a -> a.realType).toList()).returnType;
             }
 
             expr.realType = rt;
@@ -228,6 +249,17 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
                     var arg0type = expr.arguments.get(0).realType;
                 }
                 return Optional.of(returnType);
+            } else if (structType.hasGenerics()) {
+                // Each set of type arguments gets its own struct class with concrete fields
+                var typeArguments = new HashMap<String, ImpType>();
+                Util.zip(structType.parameters, expr.arguments, (param, arg) -> {
+                    if (param.getValue1() instanceof GenericType gt && arg.realType != null) {
+                        typeArguments.put(gt.key(), arg.realType);
+                    }
+                });
+                var instance = structType.instantiate(typeArguments);
+                expr.realType = instance;
+                return Optional.of(instance);
             } else {
                 expr.realType = structType;
                 return Optional.of(structType);
@@ -282,6 +314,10 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
                         currentEnvironment.setVariableType(stmt.name.source(), BuiltInType.INT);
                     }
                 }
+                case ListType lt && lt.primitiveList().isPresent() -> {
+                    stmt.expr.realType = lt;
+                    currentEnvironment.setVariableType(stmt.name.source(), lt.contentType());
+                }
                 case ListType lt -> Util.exit("Todo: iterate over lists", 97);
                 default -> Comptime.NotIterable.submit(compiler, file, stmt.expr, b.get().getName());
             }
@@ -309,39 +345,26 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
             var parametersBefore = funcType.parameters;
             var parametersAfter = new ArrayList<Pair<String, ImpType>>();
 
+            // A returned parameter of a type parameter has the same GenericType as the return type
+            var generics = new HashMap<String, GenericType>();
+            funcType.generics.forEach(name -> generics.put(name, new GenericType(name)));
             for (var param : parametersBefore) {
-                if (param.getValue1() instanceof UnknownType ut) {
-                    var attempt = currentEnvironment.getVariable(ut.typeName);
-                    if (attempt != null) {
-                        childEnvironment.setVariableType(param.getValue0(), attempt);
-                        var nt = param.setAt1(attempt);
-                        parametersAfter.add(nt);
-                    } else {
-                        Comptime.IdentifierNotFound.submit(compiler, file, stmt, ut.typeName);
-                        parametersAfter.add(param); // this can go if we break here
-                    }
-                } else if (param.getValue1() instanceof UnionType ut) {
-                    parametersAfter.add(param);
-                    var resolvedTypes = new HashSet<ImpType>();
-                    extractedMethodForUnions(resolvedTypes, ut, stmt);
-
-                    currentEnvironment.setVariableType(param.getValue0(), ut);
-                } else {
-                    parametersAfter.add(param);
+                if (param.getValue1() instanceof GenericType gt) generics.put(gt.key(), gt);
+            }
 
+            for (var param : parametersBefore) {
+                var type = TypeInference.resolve(resolveGenerics(param.getValue1(), generics));
+                reportUnresolved(type, stmt);
+                if (type != param.getValue1()) {
+                    childEnvironment.setVariableType(param.getValue0(), type);
                 }
+                parametersAfter.add(param.setAt1(type));
             }
             funcType.parameters.clear();
             funcType.parameters.addAll(parametersAfter);
 
-            if (funcType.returnType instanceof UnknownType ut) {
-                var attempt = currentEnvironment.getVariable(ut.typeName);
-                if (attempt != null) {
-                    funcType.returnType = attempt;
-                } else {
-                    Comptime.IdentifierNotFound.submit(compiler, file, stmt, ut.typeName);
-                }
-            }
+            funcType.returnType = TypeInference.resolve(resolveGenerics(funcType.returnType, generics));
+            reportUnresolved(funcType.returnType, stmt);
 
             currentEnvironment = childEnvironment;
 
@@ -371,14 +394,11 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
 
     @Override
     public Optional<ImpType> visitIdentifierExpr(Expr.Identifier expr) {
-        var t = currentEnvironment.getVariable(expr.identifier.source());
+        var symbol = currentEnvironment.resolve(expr);
+        var t = symbol == null ? null : symbol.type;
         if (t != null) {
-            if (t instanceof UnknownType ukt) {
-                var attempt = currentEnvironment.getVariable(ukt.typeName);
-                if (attempt != null) {
-                    t = attempt;
-                }
-            }
+            t = TypeInference.resolve(t);
+            symbol.type = t;
             expr.realType = t;
         } else {
             Comptime.IdentifierNotFound.submit(compiler, file, expr, expr.identifier.source());
@@ -423,7 +443,7 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
         var firstType = expr.entries.get(0).accept(this);
 
         firstType.ifPresent(type -> {
-            expr.realType = new ListType(type);
+            expr.realType = TypeTable.intern(new ListType(type));
 
             for (int i = 0; i < expr.entries.size(); i++) {
                 var t = expr.entries.get(i).accept(this);
@@ -456,14 +476,9 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
             match.cases.forEach((keyTypeStmt, pair) -> {
                 String id = pair.getValue0();
                 Stmt.Block block = pair.getValue1();
-                // Todo: Ensure the resolved ImpType is not an UnknownType
-                var caseType = match.types.get(keyTypeStmt);
-                if (caseType instanceof UnknownType ukt) {
-                    var attempt = currentEnvironment.getVariable(ukt.typeName);
-                    if (attempt != null) {
-                        caseType = attempt;
-                    }
-                }
+                var caseType = TypeInference.resolve(match.types.get(keyTypeStmt));
+                reportUnresolved(caseType, keyTypeStmt);
+                match.types.put(keyTypeStmt, caseType);
 
                 typesToCover.remove(caseType);
 
@@ -523,16 +538,8 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
             var exprType = t.get();
             StructType pointer;
             ImpType result = null;
-            if (exprType instanceof MonomorphizedStruct mt) {
-                pointer = mt.struct;
-                typeChain.add(pointer);
-                result = pointer;
-
-                result = getTempMSTType(expr, typeChain, pointer, result);
-                if (result instanceof GenericType gt) {
-                    result = mt.resolved.get(gt.key());
-                }
-            } else if (exprType instanceof StructType st) {
+            // A MonomorphizedStruct has the resolved types as its fields
+            if (exprType instanceof StructType st) {
                 pointer = st;
                 typeChain.add(pointer);
                 result = st;
@@ -581,21 +588,14 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
         if (structType != null) {
             var parametersAfter = new ArrayList<Pair<String, ImpType>>();
             Util.zip(struct.fields, structType.parameters, (a, b) -> {
-                var bType = b.getValue1();
-                if (bType instanceof UnknownType ut) {
-                    var attempt = currentEnvironment.getVariable(ut.typeName);
-                    if (attempt != null) {
-                        parametersAfter.add(b.setAt1(attempt));
-                    } else if (structType.generics.contains(ut.typeName)) {
-                        // todo: maybe generics should come first- don't want scope conflicts with other structs
-                        // todo: or perhaps this can even go in environment visitor, after all we already got the data there
-                        parametersAfter.add(b.setAt1(new GenericType(ut.typeName)));
-                    } else {
-                        Comptime.IdentifierNotFound.submit(compiler, file, a, ut.typeName);
-                        parametersAfter.add(b);
-                    }
+                var bType = TypeInference.resolve(b.getValue1());
+                if (bType instanceof UnknownType ut && structType.generics.contains(ut.typeName)) {
+                    // todo: maybe generics should come first- don't want scope conflicts with other structs
+                    // todo: or perhaps this can even go in environment visitor, after all we already got the data there
+                    parametersAfter.add(b.setAt1(new GenericType(ut.typeName)));
                 } else {
-                    parametersAfter.add(b);
+                    reportUnresolved(bType, a);
+                    parametersAfter.add(b.setAt1(bType));
                 }
             });
             structType.parameters.clear();
@@ -646,20 +646,37 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
         return Optional.empty();
     }
 
-    private void extractedMethodForUnions(HashSet<ImpType> resolvedTypes, UnionType ut, Stmt node) {
-        for (var type : ut.types) {
-            if (type instanceof UnknownType ukt) {
-                var attempt = currentEnvironment.getVariable(ukt.typeName);
-                if (attempt != null) {
-                    resolvedTypes.add(attempt);
-                } else {
-                    Comptime.IdentifierNotFound.submit(compiler, file, node, ukt.typeName);
-                }
-            } else {
-                resolvedTypes.add(type);
+    /**
+     * @return `type` with the names of a function's type parameters, also inside
+     * lists and unions, replaced by their GenericType. No environment declares
+     * them, so TypeInference cannot solve them.
+     */
+    private static ImpType resolveGenerics(ImpType type, Map<String, GenericType> generics) {
+        return switch (type) {
+            case UnknownType ukt && generics.containsKey(ukt.typeName) -> generics.get(ukt.typeName);
+            case ListType lt -> {
+                var content = resolveGenerics(lt.contentType(), generics);
+                yield content == lt.contentType() ? lt : TypeTable.intern(new ListType(content));
+            }
+            case UnionType ut && !TypeTable.isCanonical(ut) -> {
+                ut.types = ut.types.stream().map(t -> resolveGenerics(t, generics)).collect(Collectors.toSet());
+                yield ut;
+            }
+            default -> type;
+        };
+    }
+
+    /**
+     * Report every type name in `type` that TypeInference could not solve.
+     */
+    private void reportUnresolved(ImpType type, Node node) {
+        switch (type) {
+            case UnknownType ukt -> Comptime.IdentifierNotFound.submit(compiler, file, node, ukt.typeName);
+            case ListType lt -> reportUnresolved(lt.contentType(), node);
+            case UnionType ut -> ut.types.forEach(t -> reportUnresolved(t, node));
+            default -> {
             }
         }
-        ut.types = resolvedTypes;
     }
 
     private ImpType getTempMSTType(Expr.PropertyAccess expr, ArrayList<ImpType> typeChain, StructType pointer, ImpType result) {
@@ -715,18 +732,9 @@ public class TypeCheckVisitor implements IVisitor<Optional<ImpType>> {
     private void updateUnknownParameters(Expr.Call expr, StructType structType) {
         var parametersAfter = new ArrayList<Pair<String, ImpType>>();
         Util.zip(structType.parameters, expr.arguments, (param, arg) -> {
-            if (param.getValue1() instanceof UnknownType ut) {
-                var attempt = currentEnvironment.getVariable(ut.typeName);
-                if (attempt != null) {
-                    parametersAfter.add(param.setAt1(attempt));
-                } else {
-                    Comptime.IdentifierNotFound.submit(compiler, file, arg, ut.typeName);
-                    parametersAfter.add(param);
-                }
-            } else {
-                parametersAfter.add(param);
-
-            }
+            var type = TypeInference.resolve(param.getValue1());
+            reportUnresolved(type, arg);
+            parametersAfter.add(param.setAt1(type));
         });
 
         structType.parameters.clear();
@@ -0,0 +1,83 @@
+package org.imp.jvm.visitors;
+
+import org.imp.jvm.domain.SourceFile;
+import org.imp.jvm.tool.Compiler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type checking of a module where every call passes a union of `members`
+ * structs on to functions taking the same union, so each argument check
+ * compares two unions of that size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class UnionTypeCheckBenchmark {
+	static final int FUNCTIONS = 50;
+
+	@Param({"8", "64"})
+	public int members;
+
+	private Compiler compiler;
+	private SourceFile source;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(UnionTypeCheckBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	static String generate(int members) {
+		var imp = new StringBuilder();
+		var union = new StringBuilder("int");
+		for (int i = 0; i < members; i++) {
+			imp.append("""
+					struct S%1$d {
+					    v int
+					    next int[]
+					}
+					""".formatted(i));
+			union.append(" | S").append(i);
+		}
+		imp.append("type U = ").append(union).append('\n');
+		imp.append("""
+				func f0(x U, xs int[]) int {
+				    return 1
+				}
+				""");
+		for (int f = 1; f < FUNCTIONS; f++) {
+			imp.append("func f%d(x U, xs int[]) int {\n".formatted(f));
+			imp.append("    return f%1$d(x, xs) + f%1$d(x, xs) + f%1$d(x, xs)\n}\n".formatted(f - 1));
+		}
+		imp.append("log(f%d(1, [1, 2]))\n".formatted(FUNCTIONS - 1));
+		return imp.toString();
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		var root = Files.createTempDirectory("imp-unions");
+		Files.writeString(root.resolve("unions.imp"), generate(members));
+
+		compiler = new Compiler();
+		source = compiler.parse(root.toString(), "", "unions");
+		typeCheck();
+		if (!compiler.errorData().isEmpty()) throw new IllegalStateException(compiler.errorData().toString());
+	}
+
+	@Benchmark
+	public SourceFile typeCheck() {
+		source.acceptVisitor(new TypeCheckVisitor(compiler, source.rootEnvironment, source));
+		return source;
+	}
+}
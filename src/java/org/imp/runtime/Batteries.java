@@ -77,4 +77,71 @@ public class Batteries {
 	public static int len(List r) {
 		return r.size();
 	}
+
+	// Unboxed overloads for lists of builtin types. Glue selects these at the call
+	// site when the list argument's content type is known.
+
+	public static void push(IntList r, int a) {
+		r.push(a);
+	}
+
+	public static int pop(IntList r) {
+		return r.pop();
+	}
+
+	public static int at(IntList r, int pos) {
+		return r.at(pos);
+	}
+
+	public static int len(IntList r) {
+		return r.size();
+	}
+
+	public static void push(FloatList r, float a) {
+		r.push(a);
+	}
+
+	public static float pop(FloatList r) {
+		return r.pop();
+	}
+
+	public static float at(FloatList r, int pos) {
+		return r.at(pos);
+	}
+
+	public static int len(FloatList r) {
+		return r.size();
+	}
+
+	public static void push(DoubleList r, double a) {
+		r.push(a);
+	}
+
+	public static double pop(DoubleList r) {
+		return r.pop();
+	}
+
+	public static double at(DoubleList r, int pos) {
+		return r.at(pos);
+	}
+
+	public static int len(DoubleList r) {
+		return r.size();
+	}
+
+	public static void push(BoolList r, boolean a) {
+		r.push(a);
+	}
+
+	public static boolean pop(BoolList r) {
+		return r.pop();
+	}
+
+	public static boolean at(BoolList r, int pos) {
+		return r.at(pos);
+	}
+
+	public static int len(BoolList r) {
+		return r.size();
+	}
 }
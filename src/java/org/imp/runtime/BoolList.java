@@ -0,0 +1,85 @@
+package org.imp.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Growable list backing `bool[]`, storing elements unboxed. It is also a
+ * List<Boolean>, so Batteries functions without an unboxed overload accept it.
+ */
+@SuppressWarnings("unused")
+public final class BoolList extends AbstractList<Boolean> implements RandomAccess {
+	private boolean[] items;
+	private int size;
+
+	public BoolList() {
+		this(10);
+	}
+
+	public BoolList(int capacity) {
+		items = new boolean[capacity];
+	}
+
+	public void push(boolean value) {
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		items[size++] = value;
+		modCount++;
+	}
+
+	public boolean pop() {
+		if (size == 0) throw new IndexOutOfBoundsException("Cannot pop from an empty list");
+		modCount++;
+		return items[--size];
+	}
+
+	public boolean at(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	@Override
+	public Boolean get(int index) {
+		return at(index);
+	}
+
+	@Override
+	public Boolean set(int index, Boolean value) {
+		Objects.checkIndex(index, size);
+		boolean previous = items[index];
+		items[index] = value;
+		return previous;
+	}
+
+	@Override
+	public boolean add(Boolean value) {
+		push(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Boolean value) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = value;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public Boolean remove(int index) {
+		Objects.checkIndex(index, size);
+		boolean removed = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
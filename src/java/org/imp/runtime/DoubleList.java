@@ -0,0 +1,85 @@
+package org.imp.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Growable list backing `double[]`, storing elements unboxed. It is also a
+ * List<Double>, so Batteries functions without an unboxed overload accept it.
+ */
+@SuppressWarnings("unused")
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+	private double[] items;
+	private int size;
+
+	public DoubleList() {
+		this(10);
+	}
+
+	public DoubleList(int capacity) {
+		items = new double[capacity];
+	}
+
+	public void push(double value) {
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		items[size++] = value;
+		modCount++;
+	}
+
+	public double pop() {
+		if (size == 0) throw new IndexOutOfBoundsException("Cannot pop from an empty list");
+		modCount++;
+		return items[--size];
+	}
+
+	public double at(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	@Override
+	public Double get(int index) {
+		return at(index);
+	}
+
+	@Override
+	public Double set(int index, Double value) {
+		Objects.checkIndex(index, size);
+		double previous = items[index];
+		items[index] = value;
+		return previous;
+	}
+
+	@Override
+	public boolean add(Double value) {
+		push(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Double value) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = value;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public Double remove(int index) {
+		Objects.checkIndex(index, size);
+		double removed = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,85 @@
+package org.imp.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Growable list backing `float[]`, storing elements unboxed. It is also a
+ * List<Float>, so Batteries functions without an unboxed overload accept it.
+ */
+@SuppressWarnings("unused")
+public final class FloatList extends AbstractList<Float> implements RandomAccess {
+	private float[] items;
+	private int size;
+
+	public FloatList() {
+		this(10);
+	}
+
+	public FloatList(int capacity) {
+		items = new float[capacity];
+	}
+
+	public void push(float value) {
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		items[size++] = value;
+		modCount++;
+	}
+
+	public float pop() {
+		if (size == 0) throw new IndexOutOfBoundsException("Cannot pop from an empty list");
+		modCount++;
+		return items[--size];
+	}
+
+	public float at(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	@Override
+	public Float get(int index) {
+		return at(index);
+	}
+
+	@Override
+	public Float set(int index, Float value) {
+		Objects.checkIndex(index, size);
+		float previous = items[index];
+		items[index] = value;
+		return previous;
+	}
+
+	@Override
+	public boolean add(Float value) {
+		push(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Float value) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = value;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public Float remove(int index) {
+		Objects.checkIndex(index, size);
+		float removed = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
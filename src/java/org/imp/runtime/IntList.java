@@ -0,0 +1,85 @@
+package org.imp.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Growable list backing `int[]`, storing elements unboxed. It is also a
+ * List<Integer>, so Batteries functions without an unboxed overload accept it.
+ */
+@SuppressWarnings("unused")
+public final class IntList extends AbstractList<Integer> implements RandomAccess {
+	private int[] items;
+	private int size;
+
+	public IntList() {
+		this(10);
+	}
+
+	public IntList(int capacity) {
+		items = new int[capacity];
+	}
+
+	public void push(int value) {
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		items[size++] = value;
+		modCount++;
+	}
+
+	public int pop() {
+		if (size == 0) throw new IndexOutOfBoundsException("Cannot pop from an empty list");
+		modCount++;
+		return items[--size];
+	}
+
+	public int at(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	@Override
+	public Integer get(int index) {
+		return at(index);
+	}
+
+	@Override
+	public Integer set(int index, Integer value) {
+		Objects.checkIndex(index, size);
+		int previous = items[index];
+		items[index] = value;
+		return previous;
+	}
+
+	@Override
+	public boolean add(Integer value) {
+		push(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Integer value) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) items = Arrays.copyOf(items, Math.max(10, size + (size >> 1)));
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = value;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public Integer remove(int index) {
+		Objects.checkIndex(index, size);
+		int removed = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -4,12 +4,13 @@ import java.util.ArrayList;
 
 /**
  * ListWrapper exists to avoid the type erasure issue.
+ * `tag` is the content type name interned by TypeSwitch, for `match`.
  * Feature: expand `name` parameter to support struct types.
  */
-public record ListWrapper(ArrayList<?> list, String name) {
+public record ListWrapper(ArrayList<?> list, String name, int tag) {
 
     public ListWrapper(String name) {
-        this(new ArrayList<>(), name);
+        this(new ArrayList<>(), name, TypeSwitch.tag(name));
     }
 
     @Override
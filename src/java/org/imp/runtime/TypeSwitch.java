@@ -0,0 +1,94 @@
+package org.imp.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bootstrap for `match` on values that are not packed unions. Each call site
+ * maps a value to the index of the case it matches, or -1, without testing the
+ * cases one by one.
+ * <p>
+ * Case labels are classes, or the content type name of a ListWrapper list.
+ * Content type names are interned to integer tags shared by every ListWrapper,
+ * so list cases are an array lookup instead of a string compare. Other values
+ * are resolved once per class and cached at the call site.
+ */
+@SuppressWarnings("unused")
+public final class TypeSwitch {
+	private static final ConcurrentHashMap<String, Integer> tags = new ConcurrentHashMap<>();
+	private static final AtomicInteger nextTag = new AtomicInteger();
+	private static final MethodHandle INDEX;
+
+	static {
+		try {
+			INDEX = MethodHandles.lookup().findVirtual(Site.class, "index", MethodType.methodType(int.class, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private TypeSwitch() {
+	}
+
+	/**
+	 * @return the interned tag of a list content type name
+	 */
+	public static int tag(String name) {
+		return tags.computeIfAbsent(name, n -> nextTag.getAndIncrement());
+	}
+
+	/**
+	 * @param labels one Class or list content type name per case, in case order
+	 */
+	public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, Object... labels) {
+		return new ConstantCallSite(INDEX.bindTo(new Site(labels)).asType(type));
+	}
+
+	private static final class Site {
+		private final Class<?>[] classes;
+		private final int[] caseByTag;
+		private final ClassValue<Integer> caseByClass = new ClassValue<>() {
+			@Override
+			protected Integer computeValue(Class<?> type) {
+				for (int i = 0; i < classes.length; i++) {
+					if (classes[i] != null && classes[i].isAssignableFrom(type)) return i;
+				}
+				return -1;
+			}
+		};
+
+		Site(Object[] labels) {
+			classes = new Class<?>[labels.length];
+			int[] byTag = new int[0];
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] instanceof Class<?> c) {
+					classes[i] = c;
+				} else {
+					int tag = tag((String) labels[i]);
+					if (tag >= byTag.length) {
+						int length = byTag.length;
+						byTag = Arrays.copyOf(byTag, tag + 1);
+						Arrays.fill(byTag, length, byTag.length, -1);
+					}
+					if (byTag[tag] == -1) byTag[tag] = i;
+				}
+			}
+			caseByTag = byTag;
+		}
+
+		int index(Object value) {
+			if (value == null) return -1;
+			if (value instanceof ListWrapper list) {
+				int tag = list.tag();
+				return tag < caseByTag.length ? caseByTag[tag] : -1;
+			}
+			return caseByClass.get(value.getClass());
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.imp.runtime;
+
+/**
+ * Values of unions made only of `int`, `float`, `double` and `bool` are passed as
+ * one `long` instead of a box. A double is kept as its own bits, with NaN made
+ * canonical, and every other member lives in the negative quiet NaN range that
+ * no double can have: the top 13 bits are set, bits 32-34 hold the tag and the
+ * low 32 bits hold the value.
+ */
+@SuppressWarnings("unused")
+public final class Union {
+	public static final int DOUBLE = 0;
+	public static final int INT = 1;
+	public static final int FLOAT = 2;
+	public static final int BOOL = 3;
+
+	private static final long TAGGED = 0xFFF8_0000_0000_0000L;
+
+	private Union() {
+	}
+
+	public static long of(int value) {
+		return TAGGED | ((long) INT << 32) | (value & 0xFFFF_FFFFL);
+	}
+
+	public static long of(float value) {
+		return TAGGED | ((long) FLOAT << 32) | (Float.floatToRawIntBits(value) & 0xFFFF_FFFFL);
+	}
+
+	public static long of(boolean value) {
+		return TAGGED | ((long) BOOL << 32) | (value ? 1 : 0);
+	}
+
+	public static long of(double value) {
+		// doubleToLongBits maps every NaN to 0x7ff8000000000000L, outside the tagged range
+		return Double.doubleToLongBits(value);
+	}
+
+	public static int tag(long union) {
+		return (union >>> 51) == 0x1FFF ? (int) (union >>> 32) & 7 : DOUBLE;
+	}
+
+	public static int intValue(long union) {
+		return (int) union;
+	}
+
+	public static float floatValue(long union) {
+		return Float.intBitsToFloat((int) union);
+	}
+
+	public static boolean boolValue(long union) {
+		return (int) union != 0;
+	}
+
+	public static double doubleValue(long union) {
+		return Double.longBitsToDouble(union);
+	}
+
+	/**
+	 * Box the member, for code that takes any value such as `log` or lists.
+	 */
+	public static Object box(long union) {
+		return switch (tag(union)) {
+			case INT -> intValue(union);
+			case FLOAT -> floatValue(union);
+			case BOOL -> boolValue(union);
+			default -> doubleValue(union);
+		};
+	}
+}
@@ -3,6 +3,8 @@ package org.imp.test;
 import org.imp.jvm.Util;
 import org.imp.jvm.errors.Comptime;
 import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.GeneratedClassLoader;
+import org.imp.jvm.tool.ProgramRunner;
 
 import java.io.File;
 import java.io.IOException;
@@ -18,6 +20,8 @@ public class BaseTest {
     static final String pwd = System.getProperty("user.dir");
     static final String moduleLocation = Path.of(pwd, "verification").toString();
     static final Compiler compiler = new Compiler();
+    // -Dimp.test.fork=true runs each program in its own `java` process
+    static final boolean fork = Boolean.getBoolean("imp.test.fork");
 
     public Map<Integer, Long> checkForErrors(String testPath, String projectRoot) throws IOException {
         try {
@@ -50,6 +54,15 @@ public class BaseTest {
             e.printStackTrace();
         }
 
+        if (!fork) {
+            var loader = new GeneratedClassLoader(compiler.classes(), Path.of(moduleLocation, ".compile"));
+            var result = ProgramRunner.capture(loader, className);
+            Util.println(result.stdout());
+            System.err.println(result.stderr());
+            if (result.status() != 0) System.err.println("Process finished with exit code " + result.status());
+            return result.stdout().replaceAll("\\r\\n?", "\n");
+        }
+
         ProcessBuilder processBuilder = new ProcessBuilder(
                 "java",
                 "-cp",
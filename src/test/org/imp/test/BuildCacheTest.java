@@ -0,0 +1,126 @@
+package org.imp.test;
+
+import org.imp.jvm.tool.Compiler;
+import org.imp.jvm.tool.ExportTable;
+import org.imp.jvm.tool.GeneratedClassLoader;
+import org.imp.jvm.tool.ProgramRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Builds a two-file project twice against a database in a temporary directory,
+ * and runs the second build. Classes of reused files are loaded from `.compile`.
+ */
+public class BuildCacheTest {
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void connect() throws Exception {
+        Files.writeString(root.resolve("lib.imp"), """
+                export struct Point {
+                    x int
+                    y int
+                }
+                """);
+        Files.writeString(root.resolve("main.imp"), """
+                import "lib"
+
+                val p = Point(1, 2)
+                log(p.x)
+                log(p)
+                """);
+        var db = root.resolve(".compile").resolve("imp.db");
+        ExportTable.initDB(db, true);
+        ExportTable.connectDB(db);
+        build();
+    }
+
+    @AfterEach
+    void disconnect() {
+        ExportTable.disconnectDB();
+    }
+
+    private Compiler build() throws Exception {
+        var compiler = new Compiler();
+        compiler.compile(root.toString(), "main.imp");
+        return compiler;
+    }
+
+    private String run(Compiler compiler) {
+        var loader = new GeneratedClassLoader(compiler.classes(), root.resolve(".compile"));
+        var result = ProgramRunner.capture(loader, "main");
+        assertEquals(0, result.status(), result.stderr());
+        return result.stdout().replaceAll("\\r\\n?", "\n");
+    }
+
+    private static boolean cached(Compiler compiler, String name) {
+        return compiler.compilationSet().stream()
+                .filter(s -> s.name.equals(name))
+                .map(s -> s.cached)
+                .findAny()
+                .orElseThrow();
+    }
+
+    @Test
+    void unchangedProjectIsReused() throws Exception {
+        var compiler = build();
+        assertTrue(cached(compiler, "lib"));
+        assertTrue(cached(compiler, "main"));
+        assertEquals("""
+                1
+                Point[x=1, y=2]
+                """, run(compiler));
+    }
+
+    @Test
+    void importerIsReusedWhenOnlyTheBodyChanges() throws Exception {
+        Files.writeString(root.resolve("lib.imp"), """
+                export struct Point {
+                    x int
+                    y int
+                }
+
+                struct Hidden {
+                    z int
+                }
+                """);
+        var compiler = build();
+        assertFalse(cached(compiler, "lib"));
+        assertTrue(cached(compiler, "main"));
+        assertEquals("""
+                1
+                Point[x=1, y=2]
+                """, run(compiler));
+    }
+
+    @Test
+    void importerIsRebuiltWhenExportsChange() throws Exception {
+        Files.writeString(root.resolve("lib.imp"), """
+                export struct Point {
+                    x int
+                    y int
+                }
+
+                export struct Size {
+                    width int
+                }
+                """);
+        var compiler = build();
+        assertFalse(cached(compiler, "lib"));
+        assertFalse(cached(compiler, "main"));
+        assertEquals("""
+                1
+                Point[x=1, y=2]
+                """, run(compiler));
+    }
+}
@@ -0,0 +1,95 @@
+package org.imp.test;
+
+import org.imp.jvm.Util;
+import org.imp.jvm.tool.ExportTable;
+import org.imp.jvm.tool.cli.BuildClient;
+import org.imp.jvm.tool.cli.BuildServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A build server in this JVM, serving the project in a temporary directory, the
+ * same way `imp daemon` serves the working directory.
+ */
+public class BuildServerTest {
+    @TempDir
+    Path project;
+
+    private final String pwd = System.getProperty("user.dir");
+    private Thread server;
+
+    @BeforeEach
+    void start() throws IOException, InterruptedException {
+        Files.writeString(project.resolve("imp.toml"), """
+                name = "server"
+                version = "0.0.1"
+                entry = "main.imp"
+                """);
+        System.setProperty("user.dir", project.toString());
+        var db = project.resolve(".compile").resolve("imp.db");
+        ExportTable.initDB(db, false);
+        ExportTable.connectDB(db);
+
+        server = new Thread(() -> {
+            try {
+                new BuildServer(project.toString()).serve();
+            } catch (IOException e) {
+                // Interrupted by stop(), which closes the server socket
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        var socket = project.resolve(".compile").resolve("imp.sock");
+        for (int i = 0; i < 100 && !Files.exists(socket); i++) Thread.sleep(50);
+        assertTrue(Files.exists(socket));
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        server.interrupt();
+        server.join(5000);
+        ExportTable.disconnectDB();
+        Util.EXITS = true;
+        System.setProperty("user.dir", pwd);
+    }
+
+    private record Build(int status, String stdout) {
+    }
+
+    private Build build(String... args) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        int status = BuildClient.send(project, args,
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+        return new Build(status, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fatalErrorEndsOnlyThatBuild() throws IOException {
+        Files.writeString(project.resolve("main.imp"), "export log(1)\n");
+        assertEquals(65, build().status());
+        assertTrue(server.isAlive());
+
+        Files.writeString(project.resolve("main.imp"), "log(42)\n");
+        var build = build();
+        assertEquals(0, build.status());
+        assertTrue(build.stdout().endsWith("42\n"), build.stdout());
+
+        // Reopens the project database the server is connected to
+        build = build("--rebuild");
+        assertEquals(0, build.status());
+        assertTrue(build.stdout().endsWith("42\n"), build.stdout());
+    }
+}
@@ -10,6 +10,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class ErrorTest extends BaseTest {
 
+    @Test
+    void CircularImport() throws IOException {
+        assertEquals(
+                Util.countedSet(Comptime.CircularImport.code),
+                checkForErrors("errors/circularImport", moduleLocation)
+        );
+    }
+
     @Test
     void MatchCoverage() throws IOException {
         assertEquals(
@@ -45,6 +45,8 @@ public class RosettaCodeTest extends BaseTest {
                 0
                 1
                 1
+                1
+                1
                 2
                 2
                 3
@@ -59,8 +61,6 @@ public class RosettaCodeTest extends BaseTest {
                 21
                 34
                 34
-                55
-                55
                 """);
     }
 
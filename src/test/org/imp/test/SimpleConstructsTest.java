@@ -1,5 +1,6 @@
 package org.imp.test;
 
+import org.imp.jvm.PeepholeOptimizer;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -20,6 +21,85 @@ public class SimpleConstructsTest extends BaseTest {
                 """);
     }
 
+    @Test
+    void tailCalls() {
+        testLiteral("simple/tailCalls", """
+                6000000
+                1000000.0
+                21
+                done
+                0
+                7
+                0
+                3628800
+                """);
+    }
+
+    @Test
+    void inlining() {
+        testLiteral("simple/inlining", """
+                25
+                49
+                25
+                49
+                2.5
+                false
+                total: 25
+                120
+                0
+                2
+                0
+                1
+                4
+                5
+                1
+                11
+                """);
+    }
+
+    @Test
+    void stringConcat() {
+        testLiteral("simple/stringConcat", """
+                f=1.5 b=true d=2.25 i=7 p=Point[x=1, y=2]
+                Point[x=1, y=2] true1.5
+                <\u0001>x<\u0002>7
+                """ + "(2.25:7)".repeat(70) + "\n");
+    }
+
+    @Test
+    void peephole() {
+        var expected = """
+                6
+                9
+                9
+                3.5
+                43
+                nan <
+                nan >
+                nan <=
+                nan >=
+                nan not <
+                nan ==
+                nan !=
+                nan ||
+                false
+                false
+                nan double >
+                nan double not <=
+                nan double ||
+                0
+                3
+                5
+                """;
+        testLiteral("simple/peephole", expected);
+        PeepholeOptimizer.ENABLED = false;
+        try {
+            testLiteral("simple/peephole", expected);
+        } finally {
+            PeepholeOptimizer.ENABLED = true;
+        }
+    }
+
     @Test
     void StdMath() {
         testLiteral("stdlib/MathLibTest", """
@@ -35,6 +115,21 @@ public class SimpleConstructsTest extends BaseTest {
                 """);
     }
 
+    @Test
+    void constantFolding() {
+        testLiteral("simple/constantFolding", """
+                86400
+                hello world 5
+                43200
+                2
+                0
+                1
+                2
+                2
+                -9.0
+                """);
+    }
+
     @Test
     void empty() {
         testLiteral("simple/empty", """
@@ -96,5 +191,27 @@ public class SimpleConstructsTest extends BaseTest {
         test("simple/relational.txt", "simple/relational");
     }
 
+    @Test
+    void scopes() {
+        testLiteral("simple/scopes", """
+                2.5
+                reused!
+                42
+                11
+                3
+                right
+                left
+                """);
+    }
 
+    @Test
+    void whileLoop() {
+        testLiteral("simple/while", """
+                0
+                1
+                2
+                once
+                in range
+                """);
+    }
 }
@@ -1,27 +1,73 @@
 package org.imp.test;
 
+import org.imp.runtime.ListWrapper;
+import org.imp.runtime.TypeSwitch;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class SimpleTypesTest extends BaseTest {
 
-//	@Test
-//	void generics() {
-//		testLiteral("simple/generics", """
-//				Name[first=matt, last=hall]
-//				Name[first=matt, last=hall]
-//				matt
-//				Data[content=a]
-//				a
-//				""");
-//	}
+    @Test
+    void generics() {
+        testLiteral("simple/generics", """
+                8
+                Name[first=matt, last=hall]
+                Name[first=matt, last=hall]
+                matt
+                Data[content=a]
+                a
+                """);
+    }
+
+    @Test
+    void genericFunctions() {
+        testLiteral("simple/genericFunctions", """
+                int
+                1
+                int again
+                2
+                string
+                a
+                float
+                2.5
+                string again
+                b
+                point
+                Point[x=1, y=2]
+                point again
+                Point[x=3, y=4]
+                """);
+    }
+
+    @Test
+    void genericReturns() {
+        testLiteral("simple/genericReturns", """
+                a
+                [1]
+                [b]
+                [Point[x=1, y=2]]
+                5
+                2.5
+                0
+                c
+                """);
+    }
 
     @Test
     void lists() throws IOException, InterruptedException {
         test("stdlib/lists.txt", "stdlib/lists");
     }
 
+    @Test
+    void primitiveLists() throws IOException, InterruptedException {
+        test("stdlib/primitiveLists.txt", "stdlib/primitiveLists");
+    }
+
     @Test
     void match() throws IOException, InterruptedException {
         test("simple/match.txt",
@@ -29,6 +75,46 @@ public class SimpleTypesTest extends BaseTest {
 
     }
 
+    @Test
+    void typeSwitch() {
+        testLiteral("simple/typeSwitch", """
+                strings
+                [a, b]
+                points
+                [Point[x=1, y=2]]
+                sizes
+                [Size[w=1, h=1], Size[w=2, h=2]]
+                point 3
+                size 5
+                int 7
+                point 8
+                strings
+                [d]
+                """);
+    }
+
+    /**
+     * Match coverage keeps a type-checked program from matching a value with no
+     * case, so the default is exercised on a call site directly.
+     */
+    @Test
+    void typeSwitchDefault() throws Throwable {
+        // Interned before the site is built, so its tag is inside the site's table
+        var unmatched = new ListWrapper("typeSwitchDefault.unmatched");
+        var site = TypeSwitch.bootstrap(MethodHandles.lookup(), "match",
+                MethodType.methodType(int.class, Object.class),
+                String.class, "typeSwitchDefault.matched", Integer.class).dynamicInvoker();
+
+        assertEquals(0, (int) site.invoke((Object) "s"));
+        assertEquals(1, (int) site.invoke((Object) new ListWrapper("typeSwitchDefault.matched")));
+        assertEquals(2, (int) site.invoke((Object) 3));
+        assertEquals(-1, (int) site.invoke((Object) unmatched));
+        // Interned after the site is built, so its tag is past the end of the table
+        assertEquals(-1, (int) site.invoke((Object) new ListWrapper("typeSwitchDefault.later")));
+        assertEquals(-1, (int) site.invoke((Object) 2.5));
+        assertEquals(-1, (int) site.invoke((Object) null));
+    }
+
     @Test
     void structAccess() throws IOException, InterruptedException {
         testLiteral("simple/structAccess", """
@@ -66,5 +152,27 @@ public class SimpleTypesTest extends BaseTest {
 
     }
 
+    @Test
+    void packedUnions() throws IOException, InterruptedException {
+        testLiteral("simple/packedUnions", """
+                int 42
+                float 4.5
+                bool
+                false
+                7
+                int 8
+                1.5
+                float 3.0
+                true
+                bool
+                true
+                Reading[value=3, label=three]
+                Reading[value=0.5, label=three]
+                float 1.0
+                bool
+                true
+                """);
+    }
+
 
 }